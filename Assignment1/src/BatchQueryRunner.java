@@ -0,0 +1,196 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Headless load test for the planner: loads the network as the GUI does, then replays a file of queries against
+ * the snapshot through StopQueries, the same code the search box and mouse clicks use, and reports the latency
+ * of each kind of query.
+ *
+ * Usage: java BatchQueryRunner stops.txt trips.txt queries.txt [repeats]
+ *
+ * Each line of the query file is one query, blank lines and lines starting with # are skipped:
+ *   search text         what typing the text into the search box does (a prefix, a name, or "from -> to")
+ *   nearest lat lon     what clicking on that point does
+ *   trips stopId        the stop's trips highlighted, as searching for its full name does
+ *
+ * The whole file is run once to warm up, then repeats times (default 5) timed. For each kind of query the
+ * p50, p99 and max latency are printed along with the queries per second it managed on one thread.
+ */
+public class BatchQueryRunner {
+
+    private static final int DEFAULT_REPEATS = 5;
+
+
+
+    public static void main(String[] args) {
+        if(args.length < 3) {
+            System.err.println("Usage: java BatchQueryRunner stops.txt trips.txt queries.txt [repeats]");
+            return;
+        }
+        int repeats = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_REPEATS;
+
+        List<Query> queries;
+        try {
+            queries = readQueries(new File(args[2]));
+        } catch (IOException e) {
+            System.err.println("Error reading the query file: " + e);
+            return;
+        }
+        if(queries.isEmpty()) {
+            System.err.println("No queries in " + args[2]);
+            return;
+        }
+
+        FeedLoader loader = new FeedLoader(new HashMap<String, Stop>(), new HashMap<String, Trip>(), new HashSet<Connection>(), StopNames.create());
+        try {
+            loader.load(new File(args[0]), new File(args[1]));
+        } catch (IOException e) {
+            System.err.println("Error loading the stops and trips files: " + e);
+            return;
+        }
+        TransitNetwork net = TransitNetwork.freeze(loader, WalkingTransfers.DEFAULT_RADIUS, StopQueries.MAX_RESULTS);
+        System.out.println(loader.getTimings());
+        System.out.printf("Indexes: %.1fms%n", net.getBuildTime() / 1e6);
+
+        run(net, queries); //warm up, so the timed runs measure compiled code
+        Map<String, long[]> latencies = new TreeMap<String, long[]>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for(Query query : queries) {
+            counts.merge(query.kind, 1, Integer::sum);
+        }
+        for(Map.Entry<String, Integer> entry : counts.entrySet()) {
+            latencies.put(entry.getKey(), new long[entry.getValue() * repeats]);
+        }
+        Map<String, Integer> filled = new HashMap<String, Integer>();
+        long selected = 0;
+        long start = System.nanoTime();
+        for(int r = 0; r < repeats; r++) {
+            for(Query query : queries) {
+                long queryStart = System.nanoTime();
+                Selection found = query.run(net);
+                long elapsed = System.nanoTime() - queryStart;
+                int i = filled.merge(query.kind, 1, Integer::sum) - 1;
+                latencies.get(query.kind)[i] = elapsed;
+                selected += found.getStops().size() + found.getConnections().size();
+            }
+        }
+        long total = System.nanoTime() - start;
+
+        System.out.printf("%d queries x %d repeats in %.1fms, %.0f queries/s overall, %d stops and connections selected%n",
+                queries.size(), repeats, total / 1e6, queries.size() * (double) repeats / (total / 1e9), selected);
+        System.out.printf("%-8s %8s %10s %10s %10s %12s%n", "query", "count", "p50 us", "p99 us", "max us", "queries/s");
+        for(Map.Entry<String, long[]> entry : latencies.entrySet()) {
+            long[] times = entry.getValue();
+            long sum = 0;
+            for(long time : times) {
+                sum += time;
+            }
+            Arrays.sort(times);
+            System.out.printf("%-8s %8d %10.1f %10.1f %10.1f %12.0f%n", entry.getKey(), times.length,
+                    percentile(times, 0.50) / 1e3, percentile(times, 0.99) / 1e3, times[times.length - 1] / 1e3,
+                    times.length / (sum / 1e9));
+        }
+    }
+
+
+    /**
+     * Runs every query once, returning how many stops were selected so the work cannot be optimised away.
+     */
+    private static long run(TransitNetwork net, List<Query> queries) {
+        long selected = 0;
+        for(Query query : queries) {
+            selected += query.run(net).getStops().size();
+        }
+        return selected;
+    }
+
+
+    /**
+     * The nearest rank percentile of the sorted times.
+     */
+    private static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+
+    /**
+     * Reads the query file, a line that is not a known query stops the read with the line number.
+     */
+    public static List<Query> readQueries(File file) throws IOException {
+        List<Query> queries = new ArrayList<Query>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                String kind = space < 0 ? line : line.substring(0, space);
+                String rest = space < 0 ? "" : line.substring(space + 1).trim();
+                try {
+                    queries.add(new Query(kind, rest));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return queries;
+    }
+
+
+    /**
+     * One line of the query file, parsed before the timing starts.
+     */
+    public static class Query {
+        public final String kind;
+        public final String text;
+        private final Location location;
+
+        Query(String kind, String text) {
+            this.kind = kind;
+            this.text = text;
+            switch(kind) {
+                case "search":
+                case "trips":
+                    location = null;
+                    break;
+                case "nearest":
+                    String[] latLon = text.split("\\s+");
+                    if(latLon.length != 2) {
+                        throw new IllegalArgumentException("nearest needs a latitude and longitude: " + text);
+                    }
+                    try {
+                        location = Location.newFromLatLon(Double.parseDouble(latLon[0]), Double.parseDouble(latLon[1]));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("nearest needs a latitude and longitude: " + text);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown query: " + kind);
+            }
+        }
+
+        /**
+         * Answers the query as the planner would. A trips query for a stop id that is not loaded selects nothing.
+         */
+        Selection run(TransitNetwork net) {
+            switch(kind) {
+                case "search":
+                    return StopQueries.search(net, text, () -> false);
+                case "nearest":
+                    return StopQueries.nearest(net, location);
+                default:
+                    Stop stop = net.getStop(text);
+                    return stop == null ? new Selection() : StopQueries.tripsThrough(net, stop);
+            }
+        }
+
+        public String toString() {
+            return kind + " " + text;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * A read only list kept in fixed size chunks, so that a snapshot's list of stops (trips, patterns or connections)
+ * can be made from the last snapshot's by copying only the chunks holding a changed index, plus the array of
+ * chunks, rather than the whole list (see TransitNetwork.update). Every other chunk is shared with the last list.
+ */
+public class ChunkedList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private Object[][] chunks;      //element i is chunks[i >> CHUNK_BITS][i & (CHUNK_SIZE - 1)]
+    private int size;
+
+
+
+    public ChunkedList(T[] elements) {
+        size = elements.length;
+        chunks = new Object[chunkCount(size)][];
+        for(int c = 0; c < chunks.length; c++) {
+            chunks[c] = Arrays.copyOfRange(elements, c << CHUNK_BITS, (c + 1) << CHUNK_BITS, Object[].class);
+        }
+    }
+
+
+    /**
+     * previous cut or grown to size, with the element at each changed index below size given by element.
+     * Every index from previous's size up must be changed, any that isn't is null.
+     */
+    public ChunkedList(ChunkedList<T> previous, int size, BitSet changed, IntFunction<T> element) {
+        this.size = size;
+        chunks = Arrays.copyOf(previous.chunks, chunkCount(size));
+        BitSet copied = new BitSet();
+        for(int c = previous.chunks.length; c < chunks.length; c++) {
+            chunks[c] = new Object[CHUNK_SIZE];
+            copied.set(c);
+        }
+        //a shorter list doesn't keep the elements cut off its last chunk
+        if(size < previous.size && (size & (CHUNK_SIZE - 1)) != 0) {
+            Object[] last = ownChunk(chunks.length - 1, copied);
+            Arrays.fill(last, size & (CHUNK_SIZE - 1), CHUNK_SIZE, null);
+        }
+        for(int i = changed.nextSetBit(0); i >= 0 && i < size; i = changed.nextSetBit(i + 1)) {
+            ownChunk(i >> CHUNK_BITS, copied)[i & (CHUNK_SIZE - 1)] = element.apply(i);
+        }
+    }
+
+
+    /**
+     * The chunk, copied first if this list still shares it.
+     */
+    private Object[] ownChunk(int c, BitSet copied) {
+        if(!copied.get(c)) {
+            chunks[c] = chunks[c].clone();
+            copied.set(c);
+        }
+        return chunks[c];
+    }
+
+
+    private static int chunkCount(int size) {
+        return (size + CHUNK_SIZE - 1) >> CHUNK_BITS;
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        Objects.checkIndex(index, size);
+        return (T) chunks[index >> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,296 @@
+import java.util.*;
+
+/**
+ * A trie with the same StopNames contract as Trie, but stored in a few packed arrays instead of
+ * a TrieNode and HashMap per character. It has no ranking, so it only serves the loader (see StopNames.create).
+ * Removing a word only clears its stop, the nodes stay for the next word through them.
+ * Chains of nodes with a single child are compressed into one node whose edge label is a run of
+ * characters in a shared char pool. Each node's children are kept as a linked list sorted by their
+ * first character (first child / next sibling), so no per node collections or boxed Characters are needed.
+ */
+public class CompactTrie implements StopNames {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    //one entry per node, the root is node 0 and has an empty label
+    private int[] labelStart;
+    private int[] labelLength;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private Stop[] stops;
+    private int nodeCount;
+
+    //every edge label is a run of characters in here
+    private char[] pool;
+    private int poolSize;
+
+    private int keyCount;
+
+    public CompactTrie() {
+        labelStart = new int[16];
+        labelLength = new int[16];
+        firstChild = new int[16];
+        nextSibling = new int[16];
+        stops = new Stop[16];
+        pool = new char[64];
+        newNode(0, 0);
+    }
+
+
+    /**
+     * Walks down matching whole labels. If the word leaves the trie part way along a label that node is split,
+     * and if no child starts with the next character the rest of the word becomes a new leaf.
+     * Returns the stop that was there before, if any.
+     */
+    @Override
+    public Stop add(char[] word, Stop stop) {
+        int node = ROOT;
+        int i = 0;
+        while(i < word.length) {
+            int child = findChild(node, word[i]);
+            if(child == NONE) {
+                int leaf = newNode(appendToPool(word, i), word.length - i);
+                insertChild(node, leaf);
+                node = leaf;
+                break;
+            }
+            int matched = matchLength(child, word, i);
+            if(matched < labelLength[child]) {
+                child = split(node, child, matched);
+            }
+            node = child;
+            i += matched;
+        }
+        Stop replaced = stops[node];
+        if(replaced == null) {
+            keyCount++;
+        }
+        stops[node] = stop;
+        return replaced;
+    }
+
+
+    /**
+     * Clears the word's stop if it is the one given.
+     */
+    @Override
+    public void remove(char[] word, Stop stop) {
+        int node = nodeFor(word);
+        if(node != NONE && stops[node] == stop && stop != null) {
+            stops[node] = null;
+            keyCount--;
+        }
+    }
+
+
+    /**
+     * The stop stored under exactly this word, or null.
+     */
+    @Override
+    public Stop get(char[] word) {
+        int node = nodeFor(word);
+        return node == NONE ? null : stops[node];
+    }
+
+
+    /**
+     * The node ending exactly at the word, or NONE.
+     */
+    private int nodeFor(char[] word) {
+        int node = ROOT;
+        int i = 0;
+        while(i < word.length) {
+            int child = findChild(node, word[i]);
+            if(child == NONE || matchLength(child, word, i) != labelLength[child]) {
+                return NONE;
+            }
+            node = child;
+            i += labelLength[child];
+        }
+        return node;
+    }
+
+
+    /**
+     * All the stops whose name starts with the prefix, or null if none do.
+     * The prefix may end part way along a compressed label.
+     */
+    @Override
+    public List<Stop> getAll(char[] prefix) {
+        int node = ROOT;
+        int i = 0;
+        while(i < prefix.length) {
+            int child = findChild(node, prefix[i]);
+            if(child == NONE) {
+                return null;
+            }
+            int matched = matchLength(child, prefix, i);
+            if(matched < labelLength[child] && i + matched < prefix.length) {
+                return null;    //differs part way along the label
+            }
+            node = child;
+            i += matched;
+        }
+        List<Stop> results = new ArrayList<Stop>();
+        allFrom(node, results);
+        return results.isEmpty() ? null : results;     //every stop below may have been removed
+    }
+
+
+    /**
+     * Adds the node's stop to results if there is one, then goes through the whole subtree (iteratively, so long names can't overflow the stack).
+     */
+    private void allFrom(int start, List<Stop> results) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = start;
+        while(top > 0) {
+            int node = stack[--top];
+            if(stops[node] != null) {
+                results.add(stops[node]);
+            }
+            for(int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+                if(top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = c;
+            }
+        }
+    }
+
+
+    /**
+     * Number of words stored.
+     */
+    public int size() {
+        return keyCount;
+    }
+
+
+    /**
+     * Bytes used by the arrays (including unused capacity and array headers) divided by the number of words stored.
+     */
+    public double bytesPerKey() {
+        long arrayHeader = 16;
+        long bytes = 4 * (arrayHeader + 4L * labelStart.length)     //labelStart, labelLength, firstChild, nextSibling
+                + arrayHeader + 4L * stops.length                       //references, compressed oops
+                + arrayHeader + 2L * pool.length;
+        return keyCount == 0 ? 0 : (double) bytes / keyCount;
+    }
+
+
+    /**
+     * Number of array slots in use, useful for comparing against the one node per character of Trie.
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+
+    /**
+     * The child of node whose label starts with c. Children are sorted so the search stops early.
+     */
+    private int findChild(int node, char c) {
+        for(int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            char first = pool[labelStart[child]];
+            if(first == c) {
+                return child;
+            }
+            if(first > c) {
+                return NONE;
+            }
+        }
+        return NONE;
+    }
+
+
+    /**
+     * How many characters of the child's label match the word from position i.
+     */
+    private int matchLength(int child, char[] word, int i) {
+        int start = labelStart[child];
+        int length = Math.min(labelLength[child], word.length - i);
+        int matched = 0;
+        while(matched < length && pool[start + matched] == word[i + matched]) {
+            matched++;
+        }
+        return matched;
+    }
+
+
+    /**
+     * Splits the child's label after the given number of characters, putting a new node in its place
+     * in the parent's list. The new node takes the front of the label and the child keeps the rest.
+     */
+    private int split(int parent, int child, int at) {
+        int middle = newNode(labelStart[child], at);
+        labelStart[child] += at;
+        labelLength[child] -= at;
+
+        //the middle node starts with the same character so it takes the child's place in the sorted list
+        nextSibling[middle] = nextSibling[child];
+        nextSibling[child] = NONE;
+        firstChild[middle] = child;
+        if(firstChild[parent] == child) {
+            firstChild[parent] = middle;
+        } else {
+            int prev = firstChild[parent];
+            while(nextSibling[prev] != child) {
+                prev = nextSibling[prev];
+            }
+            nextSibling[prev] = middle;
+        }
+        return middle;
+    }
+
+
+    /**
+     * Links the new child into the parent's list, keeping the list sorted by first character.
+     */
+    private void insertChild(int parent, int child) {
+        char c = pool[labelStart[child]];
+        int prev = NONE;
+        int curr = firstChild[parent];
+        while(curr != NONE && pool[labelStart[curr]] < c) {
+            prev = curr;
+            curr = nextSibling[curr];
+        }
+        nextSibling[child] = curr;
+        if(prev == NONE) {
+            firstChild[parent] = child;
+        } else {
+            nextSibling[prev] = child;
+        }
+    }
+
+
+    private int newNode(int start, int length) {
+        if(nodeCount == labelStart.length) {
+            int capacity = nodeCount * 2;
+            labelStart = Arrays.copyOf(labelStart, capacity);
+            labelLength = Arrays.copyOf(labelLength, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            stops = Arrays.copyOf(stops, capacity);
+        }
+        int node = nodeCount++;
+        labelStart[node] = start;
+        labelLength[node] = length;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        return node;
+    }
+
+
+    private int appendToPool(char[] word, int from) {
+        int length = word.length - from;
+        if(poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        System.arraycopy(word, from, pool, poolSize, length);
+        int start = poolSize;
+        poolSize += length;
+        return start;
+    }
+}
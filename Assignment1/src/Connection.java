@@ -1,50 +1,72 @@
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Point;
+import java.util.*;
 
 public class Connection {
 
-    private Color col;
-    private boolean selected;
     private Stop fromStop;       //stop the connection starts at
     private Stop toStop;        //stop that the connection ends at
-    private String tripId;
+    private String[] tripIds;   //every trip going directly between the two stops, in the order they were added
+    private int tripCount;
+    private int index = -1;     //dense number given at load time, see TransitGraph
 
 
 
+    /**
+     * There is one connection per pair of stops, the first trip using it is given here and the rest are added with addTrip.
+     * */
     public Connection(String tripId, Stop fromStop, Stop toStop){
-        this.tripId = tripId;
+        this.tripIds = new String[]{tripId};
+        this.tripCount = 1;
         this.fromStop = fromStop;
         this.toStop = toStop;
-        selected = false;
     }
 
 
     /**
-     * Draws line from 'to stop', where the colour depends if it's selected/not
+     * Records another trip going directly from the from stop to the to stop.
      * */
-    public void drawConnection(Graphics g) {
-        if(selected) {
-            g.setColor(col);
-        }else {
-            g.setColor(Color.GRAY);
+    void addTrip(String tripId) {
+        if(tripCount == tripIds.length) {
+            tripIds = Arrays.copyOf(tripIds, tripCount * 2);
         }
-        g.drawLine(fromStop.getPoint().x, fromStop.getPoint().y, toStop.getPoint().x, toStop.getPoint().y);
+        tripIds[tripCount++] = tripId;
     }
 
 
-    public String toString() {
-        return "Trip ID: " + tripId + "\t From Stop: " + fromStop.getName() + "\t To Stop: " + toStop.getName();
+    /**
+     * Removes one occurrence of the trip, keeping the others in order.
+     */
+    void removeTrip(String tripId) {
+        for(int i = 0; i < tripCount; i++) {
+            if(tripIds[i].equals(tripId)) {
+                System.arraycopy(tripIds, i + 1, tripIds, i, tripCount - i - 1);
+                tripIds[--tripCount] = null;
+                return;
+            }
+        }
     }
 
 
-    public void select() {
-        selected = true;
-        col = Color.MAGENTA;
+    /**
+     * Draws line from 'to stop', where the colour depends if it's selected/not (which is up to the caller).
+     * The end points are worked out from the stops' locations, so it doesn't matter whether the stops were drawn.
+     * */
+    public void drawConnection(Graphics g, Location origin, double size, boolean selected) {
+        if(selected) {
+            g.setColor(Color.MAGENTA);
+        }else {
+            g.setColor(Color.GRAY);
+        }
+        Point from = fromStop.getStopLocation().asPoint(origin, size);
+        Point to = toStop.getStopLocation().asPoint(origin, size);
+        g.drawLine(from.x, from.y, to.x, to.y);
     }
 
 
-    public void unSelect() {
-        selected = false;
+    public String toString() {
+        return "Trip ID: " + String.join(", ", getTripIds()) + "\t From Stop: " + fromStop.getName() + "\t To Stop: " + toStop.getName();
     }
 
 
@@ -58,7 +80,28 @@ public class Connection {
     }
 
 
-    public String getTripID() {
-        return tripId;
+    /**
+     * The ids of all the trips using the connection.
+     * */
+    public List<String> getTripIds() {
+        return Collections.unmodifiableList(Arrays.asList(tripIds).subList(0, tripCount));
+    }
+
+
+    public int getIndex() {
+        return index;
+    }
+
+
+    void setIndex(int i) {
+        index = i;
+    }
+
+
+    /**
+     * How many trips use the connection.
+     * */
+    public int getTripCount() {
+        return tripCount;
     }
 }
\ No newline at end of file
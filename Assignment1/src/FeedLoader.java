@@ -0,0 +1,801 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads the stops and trips files in a single pass straight off a file channel.
+ * Bytes are split into fields on tabs and new lines by hand (no Scanner or regex), and every
+ * stop, trip and connection is put directly into the collections given to the loader.
+ * Trips through the same stops share one RoutePattern, and the connections along a pattern are only looked up once.
+ * Once the text has been parsed the network is saved as a NetworkSnapshot, which later loads
+ * read instead of the text for as long as the files are unchanged.
+ * After a load, a FeedUpdate can be applied to change individual stops and trips without reading the files again.
+ */
+public class FeedLoader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    //collections being filled by the loader
+    private Map<String, Stop> stopsById;
+    private Map<String, Trip> tripsById;
+    private Set<Connection> connections;
+    private StopNames stopsName;
+
+    //stops and trips in the order they were loaded
+    private List<Stop> loadedStops = new ArrayList<Stop>();
+    private List<Trip> loadedTrips = new ArrayList<Trip>();
+    private List<RoutePattern> loadedPatterns = new ArrayList<RoutePattern>();
+    private List<Connection> loadedConnections = new ArrayList<Connection>();
+    private Map<List<Stop>, RoutePattern> patternsByStops = new HashMap<List<Stop>, RoutePattern>();
+    //the connections to and from each stop, which the stops don't hold themselves
+    private Map<Stop, StopEdges> edges = new HashMap<Stop, StopEdges>();
+    //names held by more than one stop -> those stops in load order, the trie holds the last as a load leaves it
+    private Map<String, List<Stop>> sameName = new HashMap<String, List<Stop>>();
+    //what apply has changed since the last takeChanges, see TransitNetwork.update
+    private Changes changes = new Changes();
+
+    //state of the tokeniser for the file currently being read
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private byte[] token = new byte[256];
+    private int tokenLength;
+    private boolean endOfLine;
+    private boolean endOfFile;
+
+    //nanoseconds spent in each phase of the last load
+    private long stopsTime;
+    private long trieTime;
+    private long tripsTime;
+    private boolean fromSnapshot;
+    private String snapshotError;
+
+
+
+    public FeedLoader(Map<String, Stop> stopsById, Map<String, Trip> tripsById, Set<Connection> connections, StopNames stopsName) {
+        this.stopsById = stopsById;
+        this.tripsById = tripsById;
+        this.connections = connections;
+        this.stopsName = stopsName;
+    }
+
+
+    /**
+     * Loads both files, stops first so that the trips are able to look them up by id.
+     * A matching snapshot is used instead of the text if there is one, otherwise one is written
+     * after parsing. Failing to write the snapshot does not stop the load.
+     */
+    public void load(File stopFile, File tripFile) throws IOException {
+        loadedStops.clear();
+        loadedTrips.clear();
+        loadedPatterns.clear();
+        loadedConnections.clear();
+        patternsByStops.clear();
+        edges.clear();
+        sameName.clear();
+        changes = new Changes();
+        snapshotError = null;
+        File snapshot = NetworkSnapshot.fileFor(stopFile);
+        fromSnapshot = NetworkSnapshot.matches(snapshot, stopFile, tripFile) && loadSnapshot(snapshot);
+        if(fromSnapshot) {
+            numberLoaded();
+            return;
+        }
+
+        long start = System.nanoTime();
+        loadStops(stopFile);
+        stopsTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        addNamesToTrie();
+        trieTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        loadTrips(tripFile);
+        tripsTime = System.nanoTime() - start;
+        numberLoaded();
+
+        try {
+            NetworkSnapshot.write(snapshot, stopFile, tripFile, loadedStops, loadedPatterns, loadedTrips);
+        } catch (IOException e) {
+            snapshotError = e.getMessage();
+        }
+    }
+
+
+    /**
+     * Reads the stops and trips from the snapshot, then adds them to the collections and connects them.
+     * Returns false (with nothing added) if the snapshot could not be read, so the text is parsed instead.
+     */
+    private boolean loadSnapshot(File snapshot) {
+        long start = System.nanoTime();
+        try {
+            NetworkSnapshot.read(snapshot, loadedStops, loadedPatterns, loadedTrips);
+        } catch (IOException e) {
+            loadedStops.clear();
+            loadedPatterns.clear();
+            loadedTrips.clear();
+            snapshotError = e.getMessage();
+            return false;
+        }
+        for(Stop stop : loadedStops) {
+            stopsById.put(stop.getStopId(), stop);
+        }
+        stopsTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        addNamesToTrie();
+        trieTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for(RoutePattern pattern : loadedPatterns) {
+            patternsByStops.put(pattern.getStops(), pattern);
+        }
+        for(Trip trip : loadedTrips) {
+            tripsById.put(trip.getTripId(), trip);
+            addToConnections(trip);
+        }
+        tripsTime = System.nanoTime() - start;
+        return true;
+    }
+
+
+    /**
+     * Gives every stop, trip and pattern its dense index, which is just its position in load order.
+     * Connections are numbered as they are made.
+     */
+    private void numberLoaded() {
+        for(int i = 0; i < loadedStops.size(); i++) {
+            loadedStops.get(i).setIndex(i);
+        }
+        for(int i = 0; i < loadedTrips.size(); i++) {
+            loadedTrips.get(i).setIndex(i);
+        }
+        for(int i = 0; i < loadedPatterns.size(); i++) {
+            loadedPatterns.get(i).setIndex(i);
+        }
+    }
+
+
+    private void addNamesToTrie() {
+        for(Stop stop : loadedStops) {
+            addName(stop);
+        }
+    }
+
+
+    /**
+     * Puts the stop in the trie under its name, keeping the stop it replaces if another has the same name.
+     */
+    private void addName(Stop stop) {
+        Stop replaced = stopsName.add(stop.getName().toCharArray(), stop);
+        if(replaced != null && replaced != stop) {
+            sameName.computeIfAbsent(stop.getName(), (String name) -> new ArrayList<Stop>(Collections.singletonList(replaced))).add(stop);
+        }
+    }
+
+
+    /**
+     * Takes the stop's name out of the trie, or if other stops have the same name puts the last of them back in its place.
+     */
+    private void removeName(Stop stop) {
+        List<Stop> shared = sameName.get(stop.getName());
+        if(shared == null) {
+            stopsName.remove(stop.getName().toCharArray(), stop);
+            return;
+        }
+        shared.remove(stop);
+        stopsName.add(stop.getName().toCharArray(), shared.get(shared.size() - 1));
+        if(shared.size() == 1) {
+            sameName.remove(stop.getName());
+        }
+    }
+
+
+    /**
+     * Every line after the title is: id, name, latitude, longitude (tab separated).
+     */
+    private void loadStops(File stopFile) throws IOException {
+        open(stopFile);
+        try {
+            skipLine();     //Title
+            while(nextToken()) {
+                if(tokenLength == 0 && endOfLine) {
+                    continue;   //blank line
+                }
+                String id = tokenString();
+                String name = requireField(stopFile);
+                requireField(stopFile);
+                float lat = tokenFloat();
+                requireField(stopFile);
+                float lon = tokenFloat();
+                if(!endOfLine) {
+                    skipLine();
+                }
+                Stop newStop = new Stop(id, name, lat, lon);
+                stopsById.put(id, newStop);
+                loadedStops.add(newStop);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    /**
+     * Every line after the title is a trip id followed by the ids of the stops on the trip in order.
+     * The stops are collected into a reused list, then the trip is given the pattern for that list.
+     */
+    private void loadTrips(File tripFile) throws IOException {
+        List<Stop> tripStops = new ArrayList<Stop>();
+        open(tripFile);
+        try {
+            skipLine();     //Title
+            while(nextToken()) {
+                if(tokenLength == 0 && endOfLine) {
+                    continue;   //blank line
+                }
+                String tripId = tokenString();
+                tripStops.clear();
+                while(!endOfLine && nextToken()) {
+                    if(tokenLength == 0) {
+                        continue;
+                    }
+                    String stopId = tokenString();
+                    Stop currStop = stopsById.get(stopId);
+                    if(currStop == null) {
+                        throw new IOException("Trip " + tripId + " uses unknown stop " + stopId);
+                    }
+                    tripStops.add(currStop);
+                }
+
+                Trip trip = new Trip(tripId, patternFor(tripStops));
+                tripsById.put(tripId, trip);
+                loadedTrips.add(trip);
+                addToConnections(trip);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    /**
+     * The pattern running through exactly these stops, made the first time the sequence is seen.
+     */
+    private RoutePattern patternFor(List<Stop> tripStops) {
+        RoutePattern pattern = patternsByStops.get(tripStops);
+        if(pattern == null) {
+            pattern = new RoutePattern(tripStops.toArray(new Stop[0]));
+            pattern.setIndex(loadedPatterns.size());
+            patternsByStops.put(pattern.getStops(), pattern);
+            loadedPatterns.add(pattern);
+        }
+        return pattern;
+    }
+
+
+    /**
+     * Adds the trip to its pattern and to every connection along it. The connections are found (or made)
+     * for the pattern's first trip only, later trips reuse the pattern's.
+     */
+    private void addToConnections(Trip trip) {
+        RoutePattern pattern = trip.getPattern();
+        boolean firstTrip = pattern.getTrips().isEmpty();
+        pattern.addTrip(trip);
+        for(int i = 0; i + 1 < pattern.size(); i++) {
+            if(firstTrip) {
+                pattern.setConnection(i, connectStops(trip.getTripId(), pattern.getStop(i), pattern.getStop(i + 1)));
+            } else {
+                pattern.getConnections().get(i).addTrip(trip.getTripId());
+            }
+        }
+    }
+
+
+    /**
+     * Adds the trip to the connection between the two stops. The connection object is only created (and added to the
+     * connections collection and the stops' edges) the first time a trip goes between them.
+     */
+    private Connection connectStops(String tripId, Stop prevStop, Stop currStop) {
+        StopEdges prevEdges = edgesOf(prevStop);
+        Connection stopsConn = prevEdges.getOutgoingEdgeTo(currStop);
+        if(stopsConn == null) {
+            stopsConn = new Connection(tripId, prevStop, currStop);
+            stopsConn.setIndex(loadedConnections.size());
+            connections.add(stopsConn);
+            loadedConnections.add(stopsConn);
+            prevEdges.addOutgoingEdge(stopsConn);
+            edgesOf(currStop).addIngoingEdge(stopsConn);
+        } else {
+            stopsConn.addTrip(tripId);
+        }
+        return stopsConn;
+    }
+
+
+    /**
+     * Applies the update's changes in order to the collections of the last load. Each change only touches the stop
+     * or trip it is about: the maps, the trie, the trip's pattern and connections, and the edges of its stops.
+     * Connections and patterns left without trips are removed. The dense indexes stay packed by moving the last stop
+     * (trip, pattern or connection) into the place of a removed one. Everything added, changed or moved is
+     * recorded for takeChanges, so a snapshot can be brought up to date without copying the rest.
+     * Throws IllegalArgumentException if a change can't be made (an unknown id, a trip through an unknown stop, or
+     * removing a stop still used by a trip), leaving the changes before it applied and recorded.
+     */
+    public void apply(FeedUpdate update) {
+        for(FeedUpdate.Change change : update.getChanges()) {
+            switch(change.kind) {
+                case PUT_STOP:
+                    putStop(change.id, change.name, change.lat, change.lon);
+                    break;
+                case REMOVE_STOP:
+                    removeStop(requireStop(change.id));
+                    break;
+                case PUT_TRIP:
+                    List<Stop> tripStops = new ArrayList<Stop>();
+                    for(String stopId : change.stopIds) {
+                        tripStops.add(requireStop(stopId));
+                    }
+                    if(tripsById.containsKey(change.id)) {
+                        removeTrip(tripsById.get(change.id));
+                    }
+                    addTrip(change.id, tripStops);
+                    break;
+                case REMOVE_TRIP:
+                    Trip trip = tripsById.get(change.id);
+                    if(trip == null) {
+                        throw new IllegalArgumentException("No trip " + change.id);
+                    }
+                    removeTrip(trip);
+                    break;
+            }
+        }
+    }
+
+
+    /**
+     * What apply has changed since the last call (or the last load), which starts a new record.
+     * Stops, trips, patterns and connections that were removed again are left out.
+     */
+    public Changes takeChanges() {
+        Changes taken = changes;
+        taken.stops.removeIf((Stop stop) -> stop.getIndex() < 0);
+        taken.trips.removeIf((Trip trip) -> trip.getIndex() < 0);
+        taken.patterns.removeIf((RoutePattern pattern) -> pattern.getIndex() < 0);
+        taken.connections.removeIf((Connection conn) -> conn.getIndex() < 0);
+        changes = new Changes();
+        return taken;
+    }
+
+
+    /**
+     * The connections leaving and arriving at the stop, as the loader has them now.
+     */
+    public List<Connection> connectionsOf(Stop stop) {
+        List<Connection> found = new ArrayList<Connection>();
+        StopEdges stopEdges = edges.get(stop);
+        if(stopEdges != null) {
+            stopEdges.addAllTo(found);
+        }
+        return found;
+    }
+
+
+    private StopEdges edgesOf(Stop stop) {
+        return edges.computeIfAbsent(stop, (Stop s) -> new StopEdges());
+    }
+
+
+    /**
+     * The patterns through the stop, each once: those of the trips on its connections, and the pattern of
+     * the trips that only stop there if there are any.
+     */
+    public Set<RoutePattern> patternsThrough(Stop stop) {
+        Set<RoutePattern> found = new HashSet<RoutePattern>();
+        for(Connection conn : connectionsOf(stop)) {
+            found.addAll(patternsThrough(conn));
+        }
+        RoutePattern alone = patternsByStops.get(Collections.singletonList(stop));
+        if(alone != null) {
+            found.add(alone);
+        }
+        return found;
+    }
+
+
+    /**
+     * The patterns of the trips along the connection, each once.
+     */
+    public Set<RoutePattern> patternsThrough(Connection conn) {
+        Set<RoutePattern> found = new HashSet<RoutePattern>();
+        for(String tripId : conn.getTripIds()) {
+            found.add(tripsById.get(tripId).getPattern());
+        }
+        return found;
+    }
+
+
+    private Stop requireStop(String stopId) {
+        Stop stop = stopsById.get(stopId);
+        if(stop == null) {
+            throw new IllegalArgumentException("No stop " + stopId);
+        }
+        return stop;
+    }
+
+
+    /**
+     * Adds a stop, or renames and moves the stop with that id. A replaced stop keeps its trips.
+     */
+    private void putStop(String stopId, String name, float lat, float lon) {
+        Stop stop = stopsById.get(stopId);
+        if(stop == null) {
+            stop = new Stop(stopId, name, lat, lon);
+            stopsById.put(stopId, stop);
+            stop.setIndex(loadedStops.size());
+            loadedStops.add(stop);
+            addName(stop);
+        } else {
+            if(!stop.getName().equals(name)) {
+                removeName(stop);
+                stop.setName(name);
+                addName(stop);
+            }
+            stop.setStopLocation(lat, lon);
+        }
+        changes.stops.add(stop);
+    }
+
+
+    private void removeStop(Stop stop) {
+        if(!connectionsOf(stop).isEmpty() || patternsByStops.containsKey(Collections.singletonList(stop))) {
+            throw new IllegalArgumentException("Stop " + stop.getStopId() + " is still used by a trip");
+        }
+        stopsById.remove(stop.getStopId());
+        edges.remove(stop);
+        removeName(stop);
+        Stop moved = removePacked(loadedStops, stop.getIndex());
+        if(moved != null) {
+            moved.setIndex(stop.getIndex());
+            changes.stops.add(moved);
+        }
+        stop.setIndex(-1);
+    }
+
+
+    private void addTrip(String tripId, List<Stop> tripStops) {
+        Trip trip = new Trip(tripId, patternFor(tripStops));
+        tripsById.put(tripId, trip);
+        trip.setIndex(loadedTrips.size());
+        loadedTrips.add(trip);
+        addToConnections(trip);
+        changes.trips.add(trip);
+        changes.patterns.add(trip.getPattern());
+        changes.connections.addAll(trip.getPattern().getConnections());
+    }
+
+
+    /**
+     * Takes the trip off its pattern and connections, then drops the connections and the pattern if nothing else uses them.
+     */
+    private void removeTrip(Trip trip) {
+        RoutePattern pattern = trip.getPattern();
+        pattern.removeTrip(trip);
+        changes.patterns.add(pattern);
+        changes.connections.addAll(pattern.getConnections());
+        for(Connection conn : pattern.getConnections()) {
+            conn.removeTrip(trip.getTripId());
+            if(conn.getTripCount() == 0 && conn.getIndex() >= 0) {
+                removeConnection(conn);
+            }
+        }
+        if(pattern.getTrips().isEmpty()) {
+            patternsByStops.remove(pattern.getStops());
+            RoutePattern moved = removePacked(loadedPatterns, pattern.getIndex());
+            if(moved != null) {
+                moved.setIndex(pattern.getIndex());
+                changes.patterns.add(moved);
+            }
+            pattern.setIndex(-1);
+        }
+        tripsById.remove(trip.getTripId());
+        Trip moved = removePacked(loadedTrips, trip.getIndex());
+        if(moved != null) {
+            moved.setIndex(trip.getIndex());
+            changes.trips.add(moved);
+        }
+        trip.setIndex(-1);
+    }
+
+
+    private void removeConnection(Connection conn) {
+        connections.remove(conn);
+        edgesOf(conn.getFromStop()).removeOutgoingEdge(conn);
+        edgesOf(conn.getToStop()).removeIngoingEdge(conn);
+        Connection moved = removePacked(loadedConnections, conn.getIndex());
+        if(moved != null) {
+            moved.setIndex(conn.getIndex());
+            changes.connections.add(moved);
+        }
+        conn.setIndex(-1);
+    }
+
+
+    /**
+     * Removes the element at the index by moving the last element into its place.
+     * Returns the element that was moved, or null if the removed one was the last.
+     */
+    private static <T> T removePacked(List<T> list, int index) {
+        T last = list.remove(list.size() - 1);
+        if(index == list.size()) {
+            return null;
+        }
+        list.set(index, last);
+        return last;
+    }
+
+
+    /**
+     * A breakdown of how long each phase of the last load took.
+     */
+    public String getTimings() {
+        String timings = String.format("Load times - %s: %.1fms, trie: %.1fms, trips and connections: %.1fms, total: %.1fms",
+                fromSnapshot ? "snapshot" : "stops", stopsTime / 1e6, trieTime / 1e6, tripsTime / 1e6,
+                (stopsTime + trieTime + tripsTime) / 1e6);
+        if(snapshotError != null) {
+            timings += "\nSnapshot not used: " + snapshotError;
+        }
+        return timings;
+    }
+
+
+    /**
+     * The stops of the last load, in file order.
+     */
+    public List<Stop> getStops() {
+        return Collections.unmodifiableList(loadedStops);
+    }
+
+
+    /**
+     * The trips of the last load, in file order.
+     */
+    public List<Trip> getTrips() {
+        return Collections.unmodifiableList(loadedTrips);
+    }
+
+
+    /**
+     * The connections of the last load, in the order they were made.
+     */
+    public List<Connection> getConnections() {
+        return Collections.unmodifiableList(loadedConnections);
+    }
+
+
+    /**
+     * The stop names filled by the loader and kept up to date by apply, in a Trie or CompactTrie as it was given. Not ranked.
+     */
+    public StopNames getStopsName() {
+        return stopsName;
+    }
+
+
+    /**
+     * The route patterns of the last load, in the order they were first used.
+     */
+    public List<RoutePattern> getPatterns() {
+        return Collections.unmodifiableList(loadedPatterns);
+    }
+
+
+    private void open(File file) throws IOException {
+        channel = new FileInputStream(file).getChannel();
+        buffer.clear();
+        buffer.flip();  //empty, so the first read refills it
+        endOfLine = false;
+        endOfFile = false;
+    }
+
+
+    /**
+     * Reads the next field into the token array. The field ends at a tab, a new line or the end of the file,
+     * and endOfLine is set if it was the last field on its line. Returns false once there is nothing left.
+     */
+    private boolean nextToken() throws IOException {
+        if(endOfFile) {
+            return false;
+        }
+        tokenLength = 0;
+        endOfLine = false;
+        boolean readAnything = false;
+        while(true) {
+            if(!buffer.hasRemaining() && !fill()) {
+                endOfFile = true;
+                endOfLine = true;
+                return readAnything;
+            }
+            byte b = buffer.get();
+            readAnything = true;
+            if(b == '\t') {
+                return true;
+            }
+            if(b == '\n') {
+                endOfLine = true;
+                return true;
+            }
+            if(b == '\r') {
+                continue;
+            }
+            if(tokenLength == token.length) {
+                token = Arrays.copyOf(token, token.length * 2);
+            }
+            token[tokenLength++] = b;
+        }
+    }
+
+
+    /**
+     * Moves to the next field on the same line, failing if the line has already ended.
+     */
+    private String requireField(File file) throws IOException {
+        if(endOfLine || !nextToken()) {
+            throw new IOException(file.getName() + " is missing a field");
+        }
+        return tokenString();
+    }
+
+
+    private void skipLine() throws IOException {
+        while(nextToken() && !endOfLine) {
+        }
+    }
+
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int read = channel.read(buffer);
+        buffer.flip();
+        return read > 0;
+    }
+
+
+    private String tokenString() {
+        return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Parses plain decimals such as -12.37345 straight from the bytes, anything else
+     * (exponents etc) goes through Float.parseFloat.
+     */
+    private float tokenFloat() throws IOException {
+        int i = 0;
+        boolean negative = false;
+        if(tokenLength > 0 && (token[0] == '-' || token[0] == '+')) {
+            negative = token[0] == '-';
+            i++;
+        }
+        long digits = 0;
+        int decimals = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        for(; i < tokenLength; i++) {
+            byte b = token[i];
+            if(b >= '0' && b <= '9' && digits < Long.MAX_VALUE / 10 - 10) {
+                digits = digits * 10 + (b - '0');
+                seenDigit = true;
+                if(seenPoint) {
+                    decimals++;
+                }
+            } else if(b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return slowFloat();
+            }
+        }
+        if(!seenDigit || decimals > 18) {
+            return slowFloat();
+        }
+        double value = digits / Math.pow(10, decimals);
+        return (float) (negative ? -value : value);
+    }
+
+
+    private float slowFloat() throws IOException {
+        try {
+            return Float.parseFloat(tokenString());
+        } catch(NumberFormatException e) {
+            throw new IOException("Not a number: " + tokenString());
+        }
+    }
+
+
+    /**
+     * The stops, trips, patterns and connections that apply has added, changed, or moved to another index to keep
+     * the indexes packed. A removed one isn't listed: its index is now held by one that moved (and is listed),
+     * or is past the end of the shorter list.
+     */
+    public static class Changes {
+        public final Set<Stop> stops = new HashSet<Stop>();
+        public final Set<Trip> trips = new HashSet<Trip>();
+        public final Set<RoutePattern> patterns = new HashSet<RoutePattern>();
+        public final Set<Connection> connections = new HashSet<Connection>();
+    }
+
+
+    /**
+     * The connections leaving and arriving at one stop, kept in small arrays rather than hash sets as there is only
+     * one connection per pair of stops (see connectStops).
+     */
+    private static class StopEdges {
+        private Connection[] outgoingEdges = new Connection[2];
+        private int outgoingCount;
+        private Connection[] ingoingEdges = new Connection[2];
+        private int ingoingCount;
+
+
+        void addOutgoingEdge(Connection conn) {
+            if(outgoingCount == outgoingEdges.length) {
+                outgoingEdges = Arrays.copyOf(outgoingEdges, outgoingCount * 2);
+            }
+            outgoingEdges[outgoingCount++] = conn;
+        }
+
+
+        void addIngoingEdge(Connection conn) {
+            if(ingoingCount == ingoingEdges.length) {
+                ingoingEdges = Arrays.copyOf(ingoingEdges, ingoingCount * 2);
+            }
+            ingoingEdges[ingoingCount++] = conn;
+        }
+
+
+        void removeOutgoingEdge(Connection conn) {
+            outgoingCount = removeEdge(outgoingEdges, outgoingCount, conn);
+        }
+
+
+        void removeIngoingEdge(Connection conn) {
+            ingoingCount = removeEdge(ingoingEdges, ingoingCount, conn);
+        }
+
+
+        /**
+         * Takes the connection out of the first count edges of the array, keeping the rest in order. Returns the new count.
+         */
+        private static int removeEdge(Connection[] edges, int count, Connection conn) {
+            for(int i = 0; i < count; i++) {
+                if(edges[i] == conn) {
+                    System.arraycopy(edges, i + 1, edges, i, count - i - 1);
+                    edges[count - 1] = null;
+                    return count - 1;
+                }
+            }
+            return count;
+        }
+
+
+        /**
+         * The connection from this stop directly to the other, or null if there isn't one.
+         */
+        Connection getOutgoingEdgeTo(Stop other) {
+            for(int i = 0; i < outgoingCount; i++) {
+                if(outgoingEdges[i].getToStop() == other) {
+                    return outgoingEdges[i];
+                }
+            }
+            return null;
+        }
+
+
+        void addAllTo(List<Connection> found) {
+            found.addAll(Arrays.asList(outgoingEdges).subList(0, outgoingCount));
+            found.addAll(Arrays.asList(ingoingEdges).subList(0, ingoingCount));
+        }
+    }
+}
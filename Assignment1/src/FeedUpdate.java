@@ -0,0 +1,141 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * A batch of changes to a loaded network: stops and trips added, replaced or removed by id.
+ * Changes are applied in the order they were added (see FeedLoader.apply), so a stop can be added and then used
+ * by a trip in the same update, and a stop's trips must be removed before the stop is.
+ * Putting a stop or trip with an id that is already loaded replaces it.
+ *
+ * An update can be read from a file (see read) with one change per line, tab separated like the stops and trips
+ * files, blank lines and lines starting with # are skipped:
+ *   put_stop    id  name  latitude  longitude
+ *   remove_stop id
+ *   put_trip    id  stop id  stop id ...
+ *   remove_trip id
+ */
+public class FeedUpdate {
+
+    public enum Kind {
+        PUT_STOP, REMOVE_STOP, PUT_TRIP, REMOVE_TRIP
+    }
+
+    private List<Change> changes = new ArrayList<Change>();
+
+
+
+    public FeedUpdate putStop(String stopId, String name, float lat, float lon) {
+        changes.add(new Change(Kind.PUT_STOP, stopId, name, lat, lon, null));
+        return this;
+    }
+
+
+    public FeedUpdate removeStop(String stopId) {
+        changes.add(new Change(Kind.REMOVE_STOP, stopId, null, 0, 0, null));
+        return this;
+    }
+
+
+    /**
+     * Adds the trip, or replaces it if the id is already used. The stops are given by id, in the order they are visited.
+     */
+    public FeedUpdate putTrip(String tripId, List<String> stopIds) {
+        changes.add(new Change(Kind.PUT_TRIP, tripId, null, 0, 0, new ArrayList<String>(stopIds)));
+        return this;
+    }
+
+
+    public FeedUpdate removeTrip(String tripId) {
+        changes.add(new Change(Kind.REMOVE_TRIP, tripId, null, 0, 0, null));
+        return this;
+    }
+
+
+    /**
+     * Reads an update from the file, a line that is not a known change stops the read with the line number.
+     */
+    public static FeedUpdate read(File file) throws IOException {
+        FeedUpdate update = new FeedUpdate();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                if(line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                try {
+                    update.add(fields);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return update;
+    }
+
+
+    private void add(String[] fields) {
+        Kind kind;
+        try {
+            kind = Kind.valueOf(fields[0].trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown change: " + fields[0]);
+        }
+        int needed = kind == Kind.PUT_STOP ? 5 : kind == Kind.PUT_TRIP ? 3 : 2;
+        if(fields.length < needed) {
+            throw new IllegalArgumentException(fields[0] + " needs " + (needed - 1) + " fields");
+        }
+        switch(kind) {
+            case PUT_STOP:
+                putStop(fields[1], fields[2], Float.parseFloat(fields[3]), Float.parseFloat(fields[4]));
+                break;
+            case REMOVE_STOP:
+                removeStop(fields[1]);
+                break;
+            case PUT_TRIP:
+                putTrip(fields[1], Arrays.asList(fields).subList(2, fields.length));
+                break;
+            case REMOVE_TRIP:
+                removeTrip(fields[1]);
+                break;
+        }
+    }
+
+
+    public List<Change> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+
+    public int size() {
+        return changes.size();
+    }
+
+
+    /**
+     * One change. Only the fields its kind needs are set.
+     */
+    public static class Change {
+        public final Kind kind;
+        public final String id;
+        public final String name;
+        public final float lat;
+        public final float lon;
+        public final List<String> stopIds;
+
+        Change(Kind kind, String id, String name, float lat, float lon, List<String> stopIds) {
+            this.kind = kind;
+            this.id = id;
+            this.name = name;
+            this.lat = lat;
+            this.lon = lon;
+            this.stopIds = stopIds;
+        }
+
+        public String toString() {
+            return kind + " " + id;
+        }
+    }
+}
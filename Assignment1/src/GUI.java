@@ -87,6 +87,26 @@ public abstract class GUI {
      */
     protected abstract void onLoad(File stopFile, File tripFile);
 
+    /**
+     * Is called when the user has selected a file of changes to make to the
+     * loaded data. Does nothing unless overridden.
+     *
+     * @param updateFile
+     *            the file selected
+     */
+    protected void onUpdate(File updateFile) {
+    }
+
+    /**
+     * Whether onSearch is also called on every key released in the search box,
+     * not just on enter, to search as you type. Off unless overridden, as
+     * onSearch is then called for every partial text and so should do nothing
+     * but show results.
+     */
+    protected boolean searchOnEveryCharacter() {
+        return false;
+    }
+
     // here are some useful methods you'll need.
 
     /**
@@ -126,8 +146,6 @@ public abstract class GUI {
     // assignment up to and including completion.
     // --------------------------------------------------------------------
 
-    private static final boolean UPDATE_ON_EVERY_CHARACTER = false;
-
     private static final int DEFAULT_DRAWING_HEIGHT = 400;
     private static final int DEFAULT_DRAWING_WIDTH = 400;
     private static final int TEXT_OUTPUT_ROWS = 5;
@@ -220,6 +238,19 @@ public abstract class GUI {
             }
         });
 
+        JButton update = new JButton("Update");
+        update.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent ev) {
+                fileChooser.setCurrentDirectory(new File("."));
+                fileChooser.setDialogTitle("Select update file");
+                fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+                if (fileChooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                    onUpdate(fileChooser.getSelectedFile());
+                    redraw();
+                }
+            }
+        });
+
         JButton west = new JButton("\u2190");
         west.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent ev) {
@@ -280,13 +311,14 @@ public abstract class GUI {
             }
         });
 
-        if (UPDATE_ON_EVERY_CHARACTER) {
+        if (searchOnEveryCharacter()) {
             // this forces an action event to fire on every key press, so the
             // user doesn't need to hit enter for results.
             search.addKeyListener(new KeyAdapter() {
                 public void keyReleased(KeyEvent e) {
-                    // don't fire an event on backspace or delete
-                    if (e.getKeyCode() == 8 || e.getKeyCode() == 127)
+                    // don't fire an event on backspace or delete, or on enter
+                    // which has already fired one
+                    if (e.getKeyCode() == 8 || e.getKeyCode() == 127 || e.getKeyCode() == KeyEvent.VK_ENTER)
                         return;
                     search.postActionEvent();
                 }
@@ -314,11 +346,12 @@ public abstract class GUI {
         controls.setBorder(edge);
 
         JPanel loadquit = new JPanel();
-        loadquit.setLayout(new GridLayout(2, 1));
+        loadquit.setLayout(new GridLayout(3, 1));
         // manually set a fixed size for the panel containing the load and quit
         // buttons (doesn't change with window resize).
         loadquit.setMaximumSize(new Dimension(50, 100));
         loadquit.add(load);
+        loadquit.add(update);
         loadquit.add(quit);
         controls.add(loadquit);
         // rigid areas are invisible components that can be used to space
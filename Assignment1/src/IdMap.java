@@ -0,0 +1,69 @@
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A snapshot's stops or trips by id (see TransitNetwork). The map of an updated snapshot shares the hash map of
+ * the last one and keeps the ids changed since it was built in a small map that is looked at first, the same way
+ * StopKdTree keeps its changes, so an update costs about the number of ids it changes.
+ */
+public class IdMap<T> {
+
+    //the hash map is built again once the ids changed since it was built are more than 1 / REBUILD_SHARE of the objects
+    private static final int REBUILD_SHARE = 64;
+
+    private Map<String, T> built;
+    //ids changed since built was made -> the object now under the id, or null if there is none
+    private Map<String, T> changed;
+
+
+
+    /**
+     * The objects by id, where a later object replaces an earlier one with the same id.
+     */
+    public IdMap(List<T> objects, Function<T, String> id) {
+        built = new HashMap<String, T>();
+        for(T object : objects) {
+            built.put(id.apply(object), object);
+        }
+        changed = Collections.emptyMap();
+    }
+
+
+    /**
+     * previous with the ids of the objects at the changed indexes of previousList taken out, then those of the objects
+     * now at them in list put in. Every id is taken out before any is put back, as an id can move to another index.
+     */
+    public IdMap(IdMap<T> previous, List<T> previousList, List<T> list, BitSet changedIndexes, Function<T, String> id) {
+        built = previous.built;
+        changed = new HashMap<String, T>(previous.changed);
+        for(int i = changedIndexes.nextSetBit(0); i >= 0 && i < previousList.size(); i = changedIndexes.nextSetBit(i + 1)) {
+            T removed = previousList.get(i);
+            if(get(id.apply(removed)) == removed) {
+                changed.put(id.apply(removed), null);
+            }
+        }
+        for(int i = changedIndexes.nextSetBit(0); i >= 0 && i < list.size(); i = changedIndexes.nextSetBit(i + 1)) {
+            changed.put(id.apply(list.get(i)), list.get(i));
+        }
+
+        if((long) changed.size() * REBUILD_SHARE > list.size()) {
+            built = new HashMap<String, T>(built);
+            for(Map.Entry<String, T> entry : changed.entrySet()) {
+                if(entry.getValue() == null) {
+                    built.remove(entry.getKey());
+                } else {
+                    built.put(entry.getKey(), entry.getValue());
+                }
+            }
+            changed = Collections.emptyMap();
+        }
+    }
+
+
+    /**
+     * The object with the id, or null.
+     */
+    public T get(String key) {
+        return changed.containsKey(key) ? changed.get(key) : built.get(key);
+    }
+}
@@ -4,38 +4,55 @@ import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
 
 public class JourneyPlanner extends GUI {
     //variables for the graph
     private static final double scale = 1.5;
     private static final double move = 1.5;
-
-    //collections for holding stop, trip connection and highlighted connections and stops
-    private Set<Connection> highlightedConnections = new HashSet<Connection>();
-    private Set<Connection> connections = new HashSet<Connection>();
-    private Set<Stop> selectedStops = new HashSet<Stop>();
-    private Map<String, Stop> stopsById = new HashMap<String, Stop>();
-    private Map<String, Trip> tripsById = new HashMap<String, Trip>();
-    private Trie stopsName = new Trie();
+    private static final double walkingRadius = WalkingTransfers.DEFAULT_RADIUS;  //stops this close are linked by a walking transfer
+
+    //the network being shown, swapped for a new snapshot when a load or update has been built
+    private final AtomicReference<TransitNetwork> network = new AtomicReference<TransitNetwork>();
+    //loads and updates are built one at a time on this thread, which is the only one using feed
+    private final ExecutorService builder = Executors.newSingleThreadExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "network builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FeedLoader feed;
+
+    //searches run here, each newer one supersedes the last so only the newest result is shown
+    private final ExecutorService searcher = Executors.newSingleThreadExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "stop search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong searchGeneration = new AtomicLong();
+    private Future<?> searchInFlight;
+
+    //selected stops and highlighted connections of the current snapshot, only used on the Swing thread
+    private Selection selection = new Selection();
 
     private double size = 10;
     private double width;
     private double height;
     private Location origin;
-    private Stop selectedStop;
-    private boolean isLoaded = false;
 
 
 
-    /**draws all bus stops and connections between them
+    /**draws the bus stops and connections between them that are on screen
      */
     @Override
     protected void redraw(Graphics g) {
-        for (Map.Entry<String, Stop> stop : stopsById.entrySet()) {
-            stop.getValue().drawStop(g, origin, size);
-        }
-        for(Connection conn : connections) {
-            conn.drawConnection(g);
+        TransitNetwork net = network.get();
+        if(net != null && origin != null) {
+            net.getRenderer().draw(g, getDrawingAreaDimension(), origin, size, selection.getStops(), selection.getConnections());
         }
     }
 
@@ -43,52 +60,81 @@ public class JourneyPlanner extends GUI {
     /**
      * Finds the closest stop of the Mouse Click.
      * This is done by converting the Mouse Click from the pixel point to a location.
-     * The distance is compared to find the closest stop to the mouse click.
+     * The k-d tree of stop locations finds the closest stop to the mouse click.
      */
     @Override
     protected void onClick(MouseEvent e) {
-        if(stopsById.isEmpty() || !isLoaded) {
+        TransitNetwork net = network.get();
+        if(net == null || origin == null) {
             return;
         }
-        unselectAll();	 //removes previous selection
+        unselectAll();	 //removes previous selection, and any search result still to come
         Point clickPoint = e.getPoint();
         Location clickLocation = Location.newFromPoint(clickPoint, origin, size);
-        Stop closestStop = null;
-        double closestDist = Double.POSITIVE_INFINITY;
-
-        for(Map.Entry<String, Stop> stop : stopsById.entrySet()) {
-            if(closestStop == null || (stop.getValue().getStopLocation().distance(clickLocation) < closestDist)) {
-                closestStop = stop.getValue();
-                closestDist = stop.getValue().getStopLocation().distance(clickLocation);
-            }
-        }
-        selectStop(closestStop, false);
+        show(StopQueries.nearest(net, clickLocation));
     }
 
 
     /**
-     * Gets the text from the search box and checks if there is a stop containing the characters that has been typed
-     * it is selected and highlighted for all stops that contain the certain characters.
+     * Starts a search for the text in the search box on the search thread and returns straight away.
+     * A search still waiting to run is cancelled and one already running stops at its next check, as each
+     * search is given a generation number and only the newest is allowed to finish and be shown.
      */
     @Override
     protected void onSearch() {
-        if(isLoaded) {
-            unselectAll();
-            String searchText = getSearchBox().getText();
-            if(searchText == null || searchText.equals("")) {
-                return;
-            }
-            Stop foundStop = stopsName.get(searchText.toCharArray());
-            if(foundStop == null) {
-                List<Stop> foundStops = new ArrayList<Stop>();
-                if(stopsName.getAll(searchText.toCharArray()) != null) {
-                    foundStops.addAll(stopsName.getAll(searchText.toCharArray()));
-                    selectStop(foundStops, false);
-                }
-            }else {
-                selectStop(foundStop, true);
-            }
+        TransitNetwork net = network.get();
+        if(net == null) {
+            return;
+        }
+        String searchText = getSearchBox().getText();
+        long generation = searchGeneration.incrementAndGet();
+        if(searchInFlight != null) {
+            searchInFlight.cancel(false);
         }
+        searchInFlight = searcher.submit(() -> {
+            Selection found = search(net, searchText, generation);
+            if(found != null) {
+                SwingUtilities.invokeLater(() -> {
+                    if(!isSuperseded(generation)) {
+                        show(found);
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * Runs the search against one snapshot of the network, even if a new one is published meanwhile.
+     * Returns null if a newer search was started before this one finished, as its result will never be shown.
+     */
+    private Selection search(TransitNetwork net, String searchText, long generation) {
+        Selection found = StopQueries.search(net, searchText, () -> isSuperseded(generation));
+        return isSuperseded(generation) ? null : found;
+    }
+
+
+    private boolean isSuperseded(long generation) {
+        return generation != searchGeneration.get();
+    }
+
+
+    /**
+     * Makes the selection the one drawn and shows its text. Only called on the Swing thread.
+     */
+    private void show(Selection shown) {
+        selection = shown;
+        getTextOutputArea().setText(shown.getText());
+        redraw();
+    }
+
+
+    /**
+     * Searches as you type, which onSearch can afford as it only starts a search on the search thread.
+     */
+    @Override
+    protected boolean searchOnEveryCharacter() {
+        return true;
     }
 
 
@@ -98,7 +144,7 @@ public class JourneyPlanner extends GUI {
      */
     @Override
     protected void onMove(Move m) {
-        if(isLoaded) {
+        if(origin != null) {
             switch(m) {
                 case NORTH:
                     origin = new Location(origin.x, origin.y + move);
@@ -132,17 +178,106 @@ public class JourneyPlanner extends GUI {
 
 
     /**
-     *Calls the methods to get the text from the files and parse them into stop, connection and trip objects
+     *Streams the files through the loader, which parses them into stop, connection and trip objects.
+     *This and building the snapshot's indexes happen on the builder thread, the current network stays
+     *usable until the new one is published. The time taken by each phase of the load is printed.
+     *A failed or empty load is reported in the text area and the current network is kept.
      */
     @Override
     protected void onLoad(File stopFile, File tripFile) {
-        fillStops(parseFile(stopFile));
-        fillTrips(parseFile(tripFile));
-        setOrigin();
-        setStartWidthHeightLocation();
-        if(!stopsById.isEmpty() && !connections.isEmpty()) {
-            isLoaded = true;
-        }
+        getTextOutputArea().setText("Loading " + stopFile.getParentFile().getName() + "...");
+        builder.execute(() -> {
+            FeedLoader loader = new FeedLoader(new HashMap<String, Stop>(), new HashMap<String, Trip>(), new HashSet<Connection>(), StopNames.create());
+            TransitNetwork next;
+            try {
+                loader.load(stopFile, tripFile);
+                if(loader.getStops().isEmpty() || loader.getConnections().isEmpty()) {
+                    showText("No stops or trips were found in " + stopFile.getName() + " and " + tripFile.getName() + ", nothing loaded.");
+                    return;
+                }
+                next = TransitNetwork.freeze(loader, walkingRadius, StopQueries.MAX_RESULTS);
+            } catch (IOException | RuntimeException e) {
+                showText("Error loading the stops and trips files. Files must be in the correct format. " + e);
+                return;
+            }
+            feed = loader;
+            publish(next, true, String.format("%s\nIndexes: %.1fms", feed.getTimings(), next.getBuildTime() / 1e6));
+        });
+    }
+
+
+    /**
+     * Reads the file of changes (see FeedUpdate.read) and applies it, both on the builder thread.
+     */
+    @Override
+    protected void onUpdate(File updateFile) {
+        getTextOutputArea().setText("Updating from " + updateFile.getName() + "...");
+        builder.execute(() -> {
+            FeedUpdate update;
+            try {
+                update = FeedUpdate.read(updateFile);
+            } catch (IOException | RuntimeException e) {
+                showText("Error reading the update " + updateFile.getName() + ": " + e.getMessage());
+                return;
+            }
+            applyUpdate(update);
+        });
+    }
+
+
+    /**
+     * Changes individual stops and trips of the loaded network without reading the files again.
+     * The loader's copy of the network is changed in place on the builder thread, then the current snapshot is
+     * brought up to date in a new one (see TransitNetwork.update) and published. Searches carry on against the
+     * current snapshot until then. Changes before one that can't be made are still published.
+     */
+    public void applyUpdate(FeedUpdate update) {
+        builder.execute(() -> {
+            if(feed == null) {
+                showText("Load a network before updating it.");
+                return;
+            }
+            long start = System.nanoTime();
+            String error = "";
+            try {
+                feed.apply(update);
+            } catch (IllegalArgumentException e) {
+                error = "\nUpdate stopped part way: " + e.getMessage();
+            }
+            TransitNetwork next;
+            try {
+                next = TransitNetwork.update(network.get(), feed);
+            } catch (RuntimeException e) {
+                //the loader's changes have been taken, so only a full copy is sure to match it now
+                next = TransitNetwork.freeze(feed, walkingRadius, StopQueries.MAX_RESULTS);
+                error += "\nIndexes rebuilt in full after: " + e;
+            }
+            publish(next, false, String.format("Applied %d changes in %.1fms (indexes %.1fms)%s", update.size(),
+                    (System.nanoTime() - start) / 1e6, next.getBuildTime() / 1e6, error));
+        });
+    }
+
+
+    /**
+     * Makes the snapshot the current network, then on the Swing thread drops the selection (which belongs to the
+     * old snapshot), moves the view to the new network if asked to, and shows the message.
+     */
+    private void publish(TransitNetwork next, boolean resetView, String message) {
+        network.set(next);
+        SwingUtilities.invokeLater(() -> {
+            unselectAll();
+            if(resetView) {
+                setOrigin(next);
+                setStartWidthHeightLocation();
+            }
+            getTextOutputArea().setText(message);
+            redraw();
+        });
+    }
+
+
+    private void showText(String text) {
+        SwingUtilities.invokeLater(() -> getTextOutputArea().setText(text));
     }
 
 
@@ -150,9 +285,9 @@ public class JourneyPlanner extends GUI {
      * To calculate the origin, the max and min positions of the bus stops are found
      * to set the origin variable.
      */
-    private void setOrigin() {
-        if (!stopsById.isEmpty()) {
-            List<Stop> stops = new ArrayList<Stop>(stopsById.values());
+    private void setOrigin(TransitNetwork net) {
+        if (!net.getStops().isEmpty()) {
+            List<Stop> stops = new ArrayList<Stop>(net.getStops());
             Collections.sort(stops, (Stop stop1, Stop stop2) -> { //Stops are sorted based on the x pos
                 if (stop1.getStopLocation().x < stop2.getStopLocation().x) {
                     return -1;
@@ -178,109 +313,6 @@ public class JourneyPlanner extends GUI {
     }
 
 
-    /**
-     * Creates the connection object then adds it to the connections collection and the stops lists
-     */
-    private void connectStops(String tripId, Stop prevStop, Stop currStop) {
-        Connection stopsConn = new Connection(tripId, prevStop, currStop);
-        connections.add(stopsConn);
-        prevStop.addOutgoingEdge(stopsConn);
-        currStop.addIngoingEdge(stopsConn);
-    }
-
-
-    /**
-     * Creates the trip objects and the connections between stops on the trip.
-     * It reads over the lines of the Stringbuilder to create a trip for every line.
-     */
-    private void fillTrips(StringBuilder tripParsed) {
-        try {
-            Scanner tripScan = new Scanner(tripParsed.toString());
-            tripScan.useDelimiter("\\t|\\n");   //uses tab or new line as delimiter
-
-            if(tripScan.hasNextLine()) {
-                tripScan.nextLine();    //Title
-            }
-            while (tripScan.hasNextLine()) {
-                String tripId = tripScan.next();
-                Trip tempTrip = new Trip(tripId);
-                tripsById.put(tripId, tempTrip);
-
-                String scanStops = tripScan.nextLine();   //stores the rest of the lines
-                Scanner stopsScanner = new Scanner(scanStops);
-                Stop currStop;
-                Stop prevStop = null;
-                while (stopsScanner.hasNext()) {
-                    String currStopId = stopsScanner.next();
-                    currStop = stopsById.get(currStopId);
-                    tempTrip.addStop(currStop);
-
-                    if (prevStop != null) {
-                        connectStops(tripId, prevStop, currStop);
-                    }
-                    prevStop = currStop;
-                }
-                stopsScanner.close();
-            }
-            tripScan.close();
-        } catch (Exception e) {
-            getTextOutputArea().setText("Error creating Trips. Trips file must be in the correct format. " + e);
-        }
-    }
-
-
-    /**
-     * Parses the Stringbuilder into smaller parts to create stop objects and adds to the collection.
-     * The delimtter is used to separate by tabs to scan different parts.
-     */
-    private void fillStops(StringBuilder stopParsed) {
-        try {
-            Scanner stopScan = new Scanner(stopParsed.toString());
-            stopScan.useDelimiter("\\t|\\n");
-
-            if (stopScan.hasNextLine()) {
-                stopScan.nextLine();
-            }
-            while (stopScan.hasNextLine()) {
-                String id = stopScan.next();
-                String name = stopScan.next();
-                float lon = stopScan.nextFloat();
-                float lat = stopScan.nextFloat();
-                Stop newStop = new Stop(id, name, lon, lat);
-                stopsById.put(id, newStop);
-                stopsName.add(name.toCharArray(), newStop);
-                stopScan.nextLine();
-            }
-            stopScan.close();
-        } catch (Exception e) {
-            getTextOutputArea().setText("Error creating Stops. Stops file must be in the correct format. " + e);
-        }
-    }
-
-
-    /**
-     * Takes a file and reads it over using Filereader and Bufferedreader
-     * will be added to the String builder and then returned.
-     */
-    private StringBuilder parseFile(File parseFile) {
-        StringBuilder fileParsed = new StringBuilder();
-        try {
-            FileReader readFile = new FileReader(parseFile); //get the file and read its contents, then passing to the buffered reader
-            BufferedReader fileBuffer = new BufferedReader(readFile);
-            String line;
-            while ((line = fileBuffer.readLine()) != null) {
-                fileParsed.append(line).append("\n");
-            }
-            readFile.close();
-            fileBuffer.close();
-        } catch (IOException e) {
-            getTextOutputArea().setText("Error reading and parsing file. Error: " + e);
-            return null;
-        }
-        return fileParsed;
-    }
-
-
     /**
      * The points are based on off of the corner points of the area
      * the screen's locations width and height used relatively to the origin location.
@@ -307,86 +339,14 @@ public class JourneyPlanner extends GUI {
     }
 
 
-    /**
-     * Selects the stop within the stop class which will be drawn in red.
-     * A set will be used to store the trip Ids.
-     * No duplicates are stored, the names of the stops and trip Ids are printed.
-     * The trips are highlighted if the boolean is true.
-     */
-    private void selectStop(Stop selStop, boolean highlightTripsOn){
-        selStop.select();
-        selectedStop = selStop;
-        Set<String> stopTripIds = new HashSet<String>();
-        for(Connection c : selStop.getAllEdgesOfStop()) {
-            stopTripIds.add(c.getTripID());
-        }
-        getTextOutputArea().setText("Selected Stop Name: " + selStop.getName() + "\nID's of Trips through this Stop: " + stopTripIds.toString());
-
-        if(highlightTripsOn) {
-            highlightTrips(stopTripIds);
-        }
-    }
-
-
-    private void selectStop(List<Stop> stops, boolean highlightTripsOn){
-        for(Stop stop : stops) {
-            stop.select();
-            selectedStops.add(stop);
-        }
-
-        Set<String> stopTripIds = new HashSet<String>();
-        for(Stop s : stops) {
-            for(Connection c : s.getAllEdgesOfStop()) {
-                stopTripIds.add(c.getTripID());
-            }
-        }
-        String namesMatch = "Name of Stops matching Search prefix: ";
-        for(Stop stop : stops) {
-            namesMatch += stop.getName() + ", ";
-        }
-        getTextOutputArea().setText(namesMatch + "\nID's of Trips through this Stop: " + stopTripIds.toString());
-
-        if(highlightTripsOn) {
-            highlightTrips(stopTripIds);
-        }
-    }
-
-
     /**
      * Unselects and clears all the selected stops and connections.
-     * Clears the text printed for previous stops.
+     * Clears the text printed for previous stops, and makes sure a search still running is never shown.
      */
     private void unselectAll() {
+        searchGeneration.incrementAndGet();
         getTextOutputArea().setText("");
-        if(selectedStop != null) {
-            selectedStop.unSelect();
-            selectedStop = null;
-        }
-        if(!selectedStops.isEmpty()) {
-            for(Stop stop : selectedStops) {
-                stop.unSelect();
-            }
-            selectedStops.clear();
-        }
-        if(!highlightedConnections.isEmpty()) {
-            for(Connection conn : highlightedConnections) {
-                conn.unSelect();
-            }
-            highlightedConnections.clear();
-        }
-    }
-
-
-    /**
-     * Selects all the connections for all the trips related to stops
-     */
-    public void highlightTrips(Set<String> stopTrips) {
-        for(Connection conn : connections) {
-            if(stopTrips.contains(conn.getTripID())) {
-                conn.select();
-                highlightedConnections.add(conn);
-            }
-        }
+        selection = new Selection();
     }
 
 
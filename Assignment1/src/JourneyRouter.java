@@ -0,0 +1,306 @@
+import java.util.*;
+
+/**
+ * Answers "how do I get from A to B with the fewest changes of bus", using the rounds of the RAPTOR algorithm.
+ * It works on the RoutePatterns the trips were grouped into at load time. Round k starts from the stops
+ * first reached in round k - 1 and rides every pattern through them, so the stops first reached in round k
+ * need k trips. As the feed has no times the earliest place a pattern can be boarded is always the best one,
+ * which means each pattern is scanned at most once per round, from that stop onwards.
+ * After the start and after each round the newly reached stops are linked on foot to the stops within walking
+ * distance (see WalkingTransfers), which counts as part of the same round: walking is not a trip.
+ * Everything used by a query is an int array indexed by dense stop or pattern number.
+ */
+public class JourneyRouter {
+
+    private static final int UNREACHED = -1;
+    private static final int WALKED = -1;       //viaPattern of a stop reached on foot
+    private static final int MAX_TRIPS = 8;
+
+    private Stop[] stops;
+    private Trip[] trips;
+    private WalkingTransfers transfers;
+
+    //pattern -> its stops in order, and one trip (the first loaded) that runs it
+    private int[] patternStart;
+    private int[] patternStops;
+    private int[] patternTrip;
+
+    //stop -> the patterns through it and the position of the stop in each
+    private int[] stopPatternStart;
+    private int[] stopPatterns;
+    private int[] stopPositions;
+
+
+
+    /**
+     * The stops, trips and patterns must be in index order (see getIndex on each).
+     */
+    public JourneyRouter(List<Stop> stopList, List<Trip> tripList, List<RoutePattern> patterns, WalkingTransfers transfers) {
+        stops = stopList.toArray(new Stop[0]);
+        trips = tripList.toArray(new Trip[0]);
+        this.transfers = transfers;
+
+        int patternCount = patterns.size();
+        int length = 0;
+        for(RoutePattern pattern : patterns) {
+            length += pattern.size();
+        }
+        patternStart = new int[patternCount + 1];
+        patternStops = new int[length];
+        patternTrip = new int[patternCount];
+        int[] stopPatternCount = new int[stops.length + 1];
+        for(int p = 0; p < patternCount; p++) {
+            RoutePattern pattern = patterns.get(p);
+            patternTrip[p] = pattern.getTrips().get(0).getIndex();
+            patternStart[p + 1] = patternStart[p];
+            for(Stop stop : pattern.getStops()) {
+                patternStops[patternStart[p + 1]++] = stop.getIndex();
+                stopPatternCount[stop.getIndex() + 1]++;
+            }
+        }
+
+        stopPatternStart = stopPatternCount;
+        for(int s = 0; s < stops.length; s++) {
+            stopPatternStart[s + 1] += stopPatternStart[s];
+        }
+        stopPatterns = new int[length];
+        stopPositions = new int[length];
+        int[] next = Arrays.copyOf(stopPatternStart, stops.length);
+        for(int p = 0; p < patternCount; p++) {
+            for(int i = patternStart[p]; i < patternStart[p + 1]; i++) {
+                int s = patternStops[i];
+                stopPatterns[next[s]] = p;
+                stopPositions[next[s]++] = i - patternStart[p];
+            }
+        }
+    }
+
+
+    /**
+     * The router of previous brought up to date with the new stops, trips and patterns, where changedStops and
+     * changedPatterns are the indexes whose object is not the one previous was built with (see TransitNetwork.update).
+     * A pattern is changed whenever one of its trips is. Only the changed patterns' stops, and the rows of the
+     * changed stops and of the stops on a changed pattern (before and after), are worked out again: from the
+     * unchanged patterns of the row plus the changed ones through the stop. Everything else is copied.
+     */
+    public JourneyRouter(JourneyRouter previous, List<Stop> stopList, List<Trip> tripList, List<RoutePattern> patterns,
+            WalkingTransfers transfers, BitSet changedStops, BitSet changedPatterns) {
+        stops = stopList.toArray(new Stop[0]);
+        trips = tripList.toArray(new Trip[0]);
+        this.transfers = transfers;
+        int n = stops.length;
+        int patternCount = patterns.size();
+
+        RowSplice patternSplice = new RowSplice(previous.patternStart, patternCount, changedPatterns, (int p) -> patterns.get(p).size());
+        patternStart = patternSplice.getStart();
+        patternStops = new int[patternStart[patternCount]];
+        patternSplice.copyKept(previous.patternStops, patternStops);
+        patternTrip = Arrays.copyOf(previous.patternTrip, patternCount);
+        BitSet rows = (BitSet) changedStops.clone();
+        Map<Integer, List<int[]>> added = new HashMap<Integer, List<int[]>>();    //stop -> {pattern, position} pairs
+        for(int p = changedPatterns.nextSetBit(0); p >= 0; p = changedPatterns.nextSetBit(p + 1)) {
+            if(p < previous.patternTrip.length) {
+                for(int i = previous.patternStart[p]; i < previous.patternStart[p + 1]; i++) {
+                    rows.set(previous.patternStops[i]);
+                }
+            }
+            if(p < patternCount) {
+                RoutePattern pattern = patterns.get(p);
+                patternTrip[p] = pattern.getTrips().get(0).getIndex();
+                for(int i = 0; i < pattern.size(); i++) {
+                    int s = pattern.getStop(i).getIndex();
+                    patternStops[patternStart[p] + i] = s;
+                    rows.set(s);
+                    added.computeIfAbsent(s, (Integer stop) -> new ArrayList<int[]>()).add(new int[] {p, i});
+                }
+            }
+        }
+
+        //rows list the patterns in index order, as the full build does
+        Map<Integer, List<int[]>> rowPatterns = new HashMap<Integer, List<int[]>>();
+        for(int s = rows.nextSetBit(0); s >= 0 && s < n; s = rows.nextSetBit(s + 1)) {
+            List<int[]> through = new ArrayList<int[]>(added.getOrDefault(s, Collections.emptyList()));
+            if(!changedStops.get(s)) {
+                for(int i = previous.stopPatternStart[s]; i < previous.stopPatternStart[s + 1]; i++) {
+                    if(!changedPatterns.get(previous.stopPatterns[i])) {
+                        through.add(new int[] {previous.stopPatterns[i], previous.stopPositions[i]});
+                    }
+                }
+            }
+            through.sort((int[] a, int[] b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+            rowPatterns.put(s, through);
+        }
+
+        RowSplice stopSplice = new RowSplice(previous.stopPatternStart, n, rows, (int s) -> rowPatterns.get(s).size());
+        stopPatternStart = stopSplice.getStart();
+        stopPatterns = new int[stopPatternStart[n]];
+        stopPositions = new int[stopPatternStart[n]];
+        stopSplice.copyKept(previous.stopPatterns, stopPatterns);
+        stopSplice.copyKept(previous.stopPositions, stopPositions);
+        for(int s : stopSplice.getReplaced()) {
+            int i = stopPatternStart[s];
+            for(int[] entry : rowPatterns.get(s)) {
+                stopPatterns[i] = entry[0];
+                stopPositions[i++] = entry[1];
+            }
+        }
+    }
+
+
+    /**
+     * The journey from one stop to another using the fewest trips, as a list of legs in travel order.
+     * Walks between nearby stops are legs without a trip.
+     * The list is empty if the stops are the same, and null if the destination can't be reached.
+     */
+    public List<Leg> fewestTransfers(Stop from, Stop to) {
+        int target = to.getIndex();
+        int[] round = new int[stops.length];
+        int[] boardedAt = new int[stops.length];    //stop the leg reaching each stop was boarded at
+        int[] viaPattern = new int[stops.length];
+        int[] boardPos = new int[stops.length];     //positions along the pattern the leg was boarded and left at
+        int[] alightPos = new int[stops.length];
+        runRounds(from.getIndex(), target, MAX_TRIPS, round, boardedAt, viaPattern, boardPos, alightPos);
+
+        if(round[target] == UNREACHED) {
+            return null;
+        }
+        LinkedList<Leg> legs = new LinkedList<Leg>();
+        for(int s = target; s != from.getIndex(); s = boardedAt[s]) {
+            if(viaPattern[s] == WALKED) {
+                legs.addFirst(new Leg(null, stops[boardedAt[s]], stops[s], WALKED, WALKED));
+            } else {
+                legs.addFirst(new Leg(trips[patternTrip[viaPattern[s]]], stops[boardedAt[s]], stops[s], boardPos[s], alightPos[s]));
+            }
+        }
+        return legs;
+    }
+
+
+    /**
+     * The number of trips needed to reach every stop from the given one, indexed by stop, or -1 for stops that
+     * need more than maxTrips or can't be reached at all. The start and the stops within walking distance of it need 0.
+     */
+    public int[] tripsNeeded(Stop from, int maxTrips) {
+        int[] round = new int[stops.length];
+        int[] unused = new int[stops.length];
+        runRounds(from.getIndex(), UNREACHED, maxTrips, round, unused, unused, unused, unused);
+        return round;
+    }
+
+
+    /**
+     * Fills in the round each stop is first reached in and how: the stop its leg started at, the pattern ridden
+     * (or WALKED) and the positions along the pattern it was boarded and left at (a pattern can pass a stop twice).
+     * Stops after maxTrips rounds, or as soon as the target is reached unless the target is UNREACHED.
+     */
+    private void runRounds(int from, int target, int maxTrips, int[] round, int[] boardedAt, int[] viaPattern, int[] boardPos, int[] alightPos) {
+        Arrays.fill(round, UNREACHED);
+        round[from] = 0;
+
+        int[] marked = new int[stops.length];     //stops first reached in the last round
+        int[] reached = new int[stops.length];    //stops first reached in this round
+        marked[0] = from;
+        int markedCount = walk(1, 0, marked, round, boardedAt, viaPattern);
+        int[] boardPosition = new int[patternTrip.length];  //earliest position each pattern can be boarded this round
+        Arrays.fill(boardPosition, Integer.MAX_VALUE);
+        int[] queued = new int[patternTrip.length];
+
+        for(int k = 1; k <= maxTrips && markedCount > 0 && (target == UNREACHED || round[target] == UNREACHED); k++) {
+            int queuedCount = 0;
+            for(int m = 0; m < markedCount; m++) {
+                int s = marked[m];
+                for(int i = stopPatternStart[s]; i < stopPatternStart[s + 1]; i++) {
+                    int p = stopPatterns[i];
+                    if(boardPosition[p] == Integer.MAX_VALUE) {
+                        queued[queuedCount++] = p;
+                    }
+                    boardPosition[p] = Math.min(boardPosition[p], stopPositions[i]);
+                }
+            }
+
+            int reachedCount = 0;
+            for(int q = 0; q < queuedCount; q++) {
+                int p = queued[q];
+                int board = patternStops[patternStart[p] + boardPosition[p]];
+                for(int i = patternStart[p] + boardPosition[p] + 1; i < patternStart[p + 1]; i++) {
+                    int s = patternStops[i];
+                    if(round[s] == UNREACHED) {
+                        round[s] = k;
+                        boardedAt[s] = board;
+                        viaPattern[s] = p;
+                        boardPos[s] = boardPosition[p];
+                        alightPos[s] = i - patternStart[p];
+                        reached[reachedCount++] = s;
+                    }
+                }
+                boardPosition[p] = Integer.MAX_VALUE;
+            }
+            reachedCount = walk(reachedCount, k, reached, round, boardedAt, viaPattern);
+            int[] swap = marked;
+            marked = reached;
+            reached = swap;
+            markedCount = reachedCount;
+        }
+    }
+
+
+    /**
+     * Marks the unreached stops within walking distance of the first count stops of the list as reached in the round,
+     * adding them to the end of the list. Returns the new length of the list.
+     * Only the stops already in the list are walked from, so a journey never has two walks in a row.
+     */
+    private int walk(int count, int k, int[] list, int[] round, int[] boardedAt, int[] viaPattern) {
+        int length = count;
+        for(int m = 0; m < count; m++) {
+            int s = list[m];
+            for(int i = transfers.begin(s); i < transfers.end(s); i++) {
+                int t = transfers.target(i);
+                if(round[t] == UNREACHED) {
+                    round[t] = k;
+                    boardedAt[t] = s;
+                    viaPattern[t] = WALKED;
+                    list[length++] = t;
+                }
+            }
+        }
+        return length;
+    }
+
+
+    public int patternCount() {
+        return patternTrip.length;
+    }
+
+
+    /**
+     * One trip ridden from a stop to a later stop, or a walk between two nearby stops if trip is null.
+     * board and alight are the positions of from and to in the trip's stops, -1 for a walk.
+     */
+    public static class Leg {
+        public final Trip trip;
+        public final Stop from;
+        public final Stop to;
+        public final int board;
+        public final int alight;
+
+        public Leg(Trip trip, Stop from, Stop to, int board, int alight) {
+            this.trip = trip;
+            this.from = from;
+            this.to = to;
+            this.board = board;
+            this.alight = alight;
+        }
+
+        public boolean isWalk() {
+            return trip == null;
+        }
+
+        public String toString() {
+            if(isWalk()) {
+                return String.format("Walk from %s to %s (%.0fm)", from.getName(), to.getName(),
+                        from.getStopLocation().distance(to.getStopLocation()) * 1000);
+            }
+            return "Trip " + trip.getTripId() + " from " + from.getName() + " to " + to.getName();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.*;
+
+/**
+ * Lookups worked out once at load time so that selecting a stop only touches the trips through it.
+ * Stops and trips are referred to by their dense index (see Stop.getIndex and Trip.getIndex).
+ * stop -> the trips serving it (sorted, each once) is stored as a compressed row: the trips of stop s are
+ * stopTrips[stopTripStart[s]] up to stopTripStart[s + 1]. It is filled pattern by pattern, so each stop sequence
+ * is walked once however many trips run it.
+ * trip -> its connections in travel order comes straight from the trip's RoutePattern.
+ */
+public class NetworkIndex {
+
+    private Stop[] stops;
+    private Trip[] trips;
+
+    private int[] stopTripStart;
+    private int[] stopTrips;
+
+
+
+    /**
+     * The stops and trips must be in index order, as FeedLoader gives them.
+     */
+    public NetworkIndex(List<Stop> stopList, List<Trip> tripList, List<RoutePattern> patterns) {
+        stops = stopList.toArray(new Stop[0]);
+        trips = tripList.toArray(new Trip[0]);
+
+        //count each pattern's trips once per stop, then fill the rows
+        int[] lastPattern = new int[stops.length];
+        Arrays.fill(lastPattern, -1);
+        stopTripStart = new int[stops.length + 1];
+        for(RoutePattern pattern : patterns) {
+            for(Stop stop : pattern.getStops()) {
+                if(lastPattern[stop.getIndex()] != pattern.getIndex()) {
+                    lastPattern[stop.getIndex()] = pattern.getIndex();
+                    stopTripStart[stop.getIndex() + 1] += pattern.getTrips().size();
+                }
+            }
+        }
+        for(int s = 0; s < stops.length; s++) {
+            stopTripStart[s + 1] += stopTripStart[s];
+        }
+        stopTrips = new int[stopTripStart[stops.length]];
+        int[] next = Arrays.copyOf(stopTripStart, stops.length);
+        Arrays.fill(lastPattern, -1);
+        for(RoutePattern pattern : patterns) {
+            for(Stop stop : pattern.getStops()) {
+                if(lastPattern[stop.getIndex()] != pattern.getIndex()) {
+                    lastPattern[stop.getIndex()] = pattern.getIndex();
+                    for(Trip trip : pattern.getTrips()) {
+                        stopTrips[next[stop.getIndex()]++] = trip.getIndex();
+                    }
+                }
+            }
+        }
+        for(int s = 0; s < stops.length; s++) {
+            Arrays.sort(stopTrips, stopTripStart[s], stopTripStart[s + 1]);
+        }
+    }
+
+
+    /**
+     * The index of previous brought up to date with the new stops and trips, where changedStops and changedTrips
+     * are the indexes whose object is not the one previous was built with (see TransitNetwork.update).
+     * Only the rows of the changed stops and of the stops on a changed trip (before and after) are worked out again,
+     * from the trips of the row that are unchanged plus the changed ones through the stop, every other row is copied.
+     */
+    public NetworkIndex(NetworkIndex previous, List<Stop> stopList, List<Trip> tripList, BitSet changedStops, BitSet changedTrips) {
+        stops = stopList.toArray(new Stop[0]);
+        trips = tripList.toArray(new Trip[0]);
+        int n = stops.length;
+
+        BitSet rows = (BitSet) changedStops.clone();
+        Map<Integer, List<Integer>> added = new HashMap<Integer, List<Integer>>();
+        for(int t = changedTrips.nextSetBit(0); t >= 0; t = changedTrips.nextSetBit(t + 1)) {
+            if(t < previous.trips.length) {
+                for(Stop stop : previous.trips[t].getStops()) {
+                    rows.set(stop.getIndex());
+                }
+            }
+            if(t < trips.length) {
+                for(Stop stop : new HashSet<Stop>(trips[t].getStops())) {
+                    rows.set(stop.getIndex());
+                    added.computeIfAbsent(stop.getIndex(), (Integer s) -> new ArrayList<Integer>()).add(t);
+                }
+            }
+        }
+
+        Map<Integer, int[]> rowTrips = new HashMap<Integer, int[]>();
+        for(int s = rows.nextSetBit(0); s >= 0 && s < n; s = rows.nextSetBit(s + 1)) {
+            List<Integer> through = new ArrayList<Integer>(added.getOrDefault(s, Collections.emptyList()));
+            if(!changedStops.get(s)) {
+                for(int i = previous.stopTripStart[s]; i < previous.stopTripStart[s + 1]; i++) {
+                    if(!changedTrips.get(previous.stopTrips[i])) {
+                        through.add(previous.stopTrips[i]);
+                    }
+                }
+            }
+            rowTrips.put(s, through.stream().mapToInt(Integer::intValue).sorted().toArray());
+        }
+
+        RowSplice splice = new RowSplice(previous.stopTripStart, n, rows, (int s) -> rowTrips.get(s).length);
+        stopTripStart = splice.getStart();
+        stopTrips = new int[stopTripStart[n]];
+        splice.copyKept(previous.stopTrips, stopTrips);
+        for(int s : splice.getReplaced()) {
+            int[] row = rowTrips.get(s);
+            System.arraycopy(row, 0, stopTrips, stopTripStart[s], row.length);
+        }
+    }
+
+
+    /**
+     * Indexes of the trips that stop at the stop, in load order.
+     */
+    public int[] tripsThrough(Stop stop) {
+        return Arrays.copyOfRange(stopTrips, stopTripStart[stop.getIndex()], stopTripStart[stop.getIndex() + 1]);
+    }
+
+
+    /**
+     * The trips through any of the stops, as a set of trip indexes.
+     */
+    public BitSet tripsThrough(Collection<Stop> stopList) {
+        BitSet found = new BitSet(trips.length);
+        for(Stop stop : stopList) {
+            for(int i = stopTripStart[stop.getIndex()]; i < stopTripStart[stop.getIndex() + 1]; i++) {
+                found.set(stopTrips[i]);
+            }
+        }
+        return found;
+    }
+
+
+    /**
+     * The number of trips through the stop, 0 for a stop this index was not built with (e.g. one added since).
+     */
+    public int tripsServed(Stop stop) {
+        int s = stop.getIndex();
+        if(s < 0 || s >= stops.length || stops[s] != stop) {
+            return 0;
+        }
+        return stopTripStart[s + 1] - stopTripStart[s];
+    }
+
+
+    /**
+     * The trip's connections in the order they are travelled.
+     */
+    public List<Connection> connectionsOf(int trip) {
+        return trips[trip].getPattern().getConnections();
+    }
+
+
+    public Trip getTrip(int trip) {
+        return trips[trip];
+    }
+
+
+    public int tripCount() {
+        return trips.length;
+    }
+}
@@ -0,0 +1,284 @@
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.util.*;
+
+/**
+ * Draws only the part of the network that can be seen.
+ * The k-d tree finds the stops in the visible area, grown by a small margin (the length of all but the longest
+ * LONG_SHARE of the connections) so that every ordinary connection crossing the screen has its from stop in the
+ * search. The few long connections (ferries, express runs) are indexed by their own bounding boxes in a grid of
+ * GRID_CELLS by GRID_CELLS cells, so one of them can't grow the search to the whole map. Connections entirely off
+ * screen are skipped.
+ * When zoomed out, stops falling in the same few pixels are drawn once (selected stops are always drawn) and
+ * connections shorter than a pixel are left out, so the work per frame depends on what is visible, not on the
+ * size of the network.
+ * The renderer for a network with a few connections changed keeps the margin and grid of the last one, see the
+ * updating constructor.
+ */
+public class NetworkRenderer {
+
+    private static final int CELL_SIZE = 5;     //pixels, stops in the same cell are drawn as one
+    private static final double LONG_SHARE = 0.01;
+    private static final int GRID_CELLS = 64;
+
+    private StopKdTree stopTree;
+    private TransitGraph graph;
+    private double margin;          //longest connection not in the grid
+    private BitSet isLong;          //by connection index
+
+    //the long connections: cell c of the grid holds longConnections[cellStart[c]] up to cellStart[c + 1]
+    private int[] longConnections;
+    private int[] cellStart;
+    private double gridMinX, gridMinY, cellWidth, cellHeight;
+
+
+
+    public NetworkRenderer(StopKdTree stopTree, TransitGraph graph) {
+        this.stopTree = stopTree;
+        this.graph = graph;
+        layOut();
+    }
+
+
+    /**
+     * The renderer for graph, which is previous's with the connections at the changed indexes replaced, added or
+     * removed. It keeps previous's margin and grid, so a changed connection is long if it is longer than that margin,
+     * and only the cells covered by the old or new version of a changed long connection are filled again, from the
+     * unchanged connections in the cell plus the changed ones covering it. Every other cell is copied.
+     * If that leaves more than twice the usual share of connections long it is laid out again instead.
+     */
+    public NetworkRenderer(NetworkRenderer previous, StopKdTree stopTree, TransitGraph graph, BitSet changedConnections) {
+        this.stopTree = stopTree;
+        this.graph = graph;
+        int m = graph.connectionCount();
+        int cellCount = GRID_CELLS * GRID_CELLS;
+        margin = previous.margin;
+        gridMinX = previous.gridMinX;
+        gridMinY = previous.gridMinY;
+        cellWidth = previous.cellWidth;
+        cellHeight = previous.cellHeight;
+        isLong = (BitSet) previous.isLong.clone();
+        isLong.clear(m, Math.max(m, previous.graph.connectionCount()));
+
+        BitSet cells = new BitSet(cellCount);
+        Map<Integer, List<Integer>> added = new HashMap<Integer, List<Integer>>();
+        for(int e = changedConnections.nextSetBit(0); e >= 0; e = changedConnections.nextSetBit(e + 1)) {
+            if(e < previous.graph.connectionCount() && previous.isLong.get(e)) {
+                int[] box = cellBox(previous.graph.getConnection(e));
+                for(int row = box[1]; row <= box[3]; row++) {
+                    cells.set(row * GRID_CELLS + box[0], row * GRID_CELLS + box[2] + 1);
+                }
+            }
+            if(e < m) {
+                isLong.set(e, length(graph.getConnection(e)) > margin);
+                if(isLong.get(e)) {
+                    int[] box = cellBox(graph.getConnection(e));
+                    for(int row = box[1]; row <= box[3]; row++) {
+                        for(int col = box[0]; col <= box[2]; col++) {
+                            cells.set(row * GRID_CELLS + col);
+                            added.computeIfAbsent(row * GRID_CELLS + col, (Integer c) -> new ArrayList<Integer>()).add(e);
+                        }
+                    }
+                }
+            }
+        }
+        if(isLong.cardinality() > 2 * LONG_SHARE * m) {
+            layOut();
+            return;
+        }
+
+        Map<Integer, int[]> cellConnections = new HashMap<Integer, int[]>();
+        for(int c = cells.nextSetBit(0); c >= 0; c = cells.nextSetBit(c + 1)) {
+            List<Integer> connections = new ArrayList<Integer>(added.getOrDefault(c, Collections.emptyList()));
+            for(int i = previous.cellStart[c]; i < previous.cellStart[c + 1]; i++) {
+                if(!changedConnections.get(previous.longConnections[i])) {
+                    connections.add(previous.longConnections[i]);
+                }
+            }
+            cellConnections.put(c, connections.stream().mapToInt(Integer::intValue).sorted().toArray());
+        }
+
+        RowSplice splice = new RowSplice(previous.cellStart, cellCount, cells, (int c) -> cellConnections.get(c).length);
+        cellStart = splice.getStart();
+        longConnections = new int[cellStart[cellCount]];
+        splice.copyKept(previous.longConnections, longConnections);
+        for(int c : splice.getReplaced()) {
+            int[] connections = cellConnections.get(c);
+            System.arraycopy(connections, 0, longConnections, cellStart[c], connections.length);
+        }
+    }
+
+
+    /**
+     * Works out the margin from the connections' lengths, then the grid over the longer connections.
+     */
+    private void layOut() {
+        int m = graph.connectionCount();
+        double[] lengths = new double[m];
+        for(int e = 0; e < m; e++) {
+            lengths[e] = length(graph.getConnection(e));
+        }
+        double[] sorted = lengths.clone();
+        Arrays.sort(sorted);
+        margin = m == 0 ? 0 : sorted[Math.max(0, (int) Math.ceil(m * (1 - LONG_SHARE)) - 1)];
+        isLong = new BitSet(m);
+        gridMinX = gridMinY = Double.POSITIVE_INFINITY;
+        double gridMaxX = Double.NEGATIVE_INFINITY;
+        double gridMaxY = Double.NEGATIVE_INFINITY;
+        for(int e = 0; e < m; e++) {
+            if(lengths[e] > margin) {
+                isLong.set(e);
+                Connection conn = graph.getConnection(e);
+                Location from = conn.getFromStop().getStopLocation();
+                Location to = conn.getToStop().getStopLocation();
+                gridMinX = Math.min(gridMinX, Math.min(from.x, to.x));
+                gridMinY = Math.min(gridMinY, Math.min(from.y, to.y));
+                gridMaxX = Math.max(gridMaxX, Math.max(from.x, to.x));
+                gridMaxY = Math.max(gridMaxY, Math.max(from.y, to.y));
+            }
+        }
+        cellWidth = Math.max((gridMaxX - gridMinX) / GRID_CELLS, Double.MIN_NORMAL);
+        cellHeight = Math.max((gridMaxY - gridMinY) / GRID_CELLS, Double.MIN_NORMAL);
+
+        //count the cells each long connection's box covers, then fill them
+        cellStart = new int[GRID_CELLS * GRID_CELLS + 1];
+        for(int e = isLong.nextSetBit(0); e >= 0; e = isLong.nextSetBit(e + 1)) {
+            int[] box = cellBox(graph.getConnection(e));
+            for(int row = box[1]; row <= box[3]; row++) {
+                for(int col = box[0]; col <= box[2]; col++) {
+                    cellStart[row * GRID_CELLS + col + 1]++;
+                }
+            }
+        }
+        for(int c = 0; c < GRID_CELLS * GRID_CELLS; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        longConnections = new int[cellStart[GRID_CELLS * GRID_CELLS]];
+        int[] next = Arrays.copyOf(cellStart, GRID_CELLS * GRID_CELLS);
+        for(int e = isLong.nextSetBit(0); e >= 0; e = isLong.nextSetBit(e + 1)) {
+            int[] box = cellBox(graph.getConnection(e));
+            for(int row = box[1]; row <= box[3]; row++) {
+                for(int col = box[0]; col <= box[2]; col++) {
+                    longConnections[next[row * GRID_CELLS + col]++] = e;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Draws the visible part of the network, with the given stops and connections in their selected colours.
+     */
+    public void draw(Graphics g, Dimension area, Location origin, double size, Set<Stop> selectedStops, Set<Connection> selectedConnections) {
+        double minX = origin.x;
+        double maxX = origin.x + area.width / size;
+        double maxY = origin.y;
+        double minY = origin.y - area.height / size;
+
+        List<Stop> nearby = new ArrayList<Stop>();
+        stopTree.inRange(minX - margin, minY - margin, maxX + margin, maxY + margin, nearby::add);
+
+        int columns = area.width / CELL_SIZE + 1;
+        int rows = area.height / CELL_SIZE + 1;
+        BitSet occupied = new BitSet(columns * rows);
+        for(Stop stop : nearby) {
+            Point p = stop.getStopLocation().asPoint(origin, size);
+            if(p.x < 0 || p.x >= area.width || p.y < 0 || p.y >= area.height) {
+                continue;
+            }
+            int cell = (p.y / CELL_SIZE) * columns + p.x / CELL_SIZE;
+            boolean selected = selectedStops.contains(stop);
+            if(!occupied.get(cell) || selected) {
+                occupied.set(cell);
+                stop.drawStop(g, origin, size, selected);
+            }
+        }
+
+        //selected connections go on top of the grey ones
+        List<Connection> selected = new ArrayList<Connection>();
+        for(Stop stop : nearby) {
+            for(int i = graph.outBegin(stop.getIndex()); i < graph.outEnd(stop.getIndex()); i++) {
+                if(!isLong.get(graph.outEdge(i))) {
+                    drawIfVisible(g, graph.getConnection(graph.outEdge(i)), origin, size, minX, minY, maxX, maxY, selectedConnections, selected);
+                }
+            }
+        }
+        if(longConnections.length > 0) {
+            BitSet drawn = new BitSet(graph.connectionCount());
+            int[] box = cellBox(minX, minY, maxX, maxY);
+            for(int row = box[1]; row <= box[3]; row++) {
+                for(int col = box[0]; col <= box[2]; col++) {
+                    int cell = row * GRID_CELLS + col;
+                    for(int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        if(!drawn.get(longConnections[i])) {
+                            drawn.set(longConnections[i]);
+                            drawIfVisible(g, graph.getConnection(longConnections[i]), origin, size, minX, minY, maxX, maxY, selectedConnections, selected);
+                        }
+                    }
+                }
+            }
+        }
+        for(Connection conn : selected) {
+            conn.drawConnection(g, origin, size, true);
+        }
+    }
+
+
+    /**
+     * Draws the connection in grey if it can be seen and is at least a pixel long, selected ones are kept back
+     * to be drawn last.
+     */
+    private void drawIfVisible(Graphics g, Connection conn, Location origin, double size, double minX, double minY, double maxX, double maxY,
+            Set<Connection> selectedConnections, List<Connection> selected) {
+        if(!isVisible(conn, minX, minY, maxX, maxY)) {
+            return;
+        }
+        if(selectedConnections.contains(conn)) {
+            selected.add(conn);
+        } else if(length(conn) * size >= 1) {
+            conn.drawConnection(g, origin, size, false);
+        }
+    }
+
+
+    /**
+     * The grid cells covered by the connection's box, as {first column, first row, last column, last row}.
+     */
+    private int[] cellBox(Connection conn) {
+        Location from = conn.getFromStop().getStopLocation();
+        Location to = conn.getToStop().getStopLocation();
+        return cellBox(Math.min(from.x, to.x), Math.min(from.y, to.y), Math.max(from.x, to.x), Math.max(from.y, to.y));
+    }
+
+
+    /**
+     * The grid cells covered by the box, clamped to the grid, as {first column, first row, last column, last row}.
+     */
+    private int[] cellBox(double minX, double minY, double maxX, double maxY) {
+        return new int[] {cell(minX, gridMinX, cellWidth), cell(minY, gridMinY, cellHeight),
+                cell(maxX, gridMinX, cellWidth), cell(maxY, gridMinY, cellHeight)};
+    }
+
+
+    private static int cell(double value, double gridMin, double cellSize) {
+        double cell = Math.floor((value - gridMin) / cellSize);
+        return (int) Math.max(0, Math.min(GRID_CELLS - 1, cell));
+    }
+
+
+    /**
+     * True if the box around the connection overlaps the visible area.
+     */
+    private boolean isVisible(Connection conn, double minX, double minY, double maxX, double maxY) {
+        Location from = conn.getFromStop().getStopLocation();
+        Location to = conn.getToStop().getStopLocation();
+        return Math.max(from.x, to.x) >= minX && Math.min(from.x, to.x) <= maxX
+                && Math.max(from.y, to.y) >= minY && Math.min(from.y, to.y) <= maxY;
+    }
+
+
+    private static double length(Connection conn) {
+        return conn.getFromStop().getStopLocation().distance(conn.getToStop().getStopLocation());
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A compact binary copy of a loaded network, so that the text files only need to be parsed once.
+ * Stops, route patterns and trips are numbered in load order and all the ids and names are written once into a string table.
+ * The header holds the size and last modified time of the text files it was made from,
+ * so a snapshot is only used while those files are unchanged.
+ *
+ * Layout (big endian): magic, version, stops file length and mtime, trips file length and mtime,
+ * string table (count, then length + UTF-8 bytes for each), stops (count, then id, name, x, y for each),
+ * patterns (count, then number of stops and the stop numbers for each), trips (count, then id and pattern number for each).
+ */
+public class NetworkSnapshot {
+
+    private static final int MAGIC = 0x4A505331; //"JPS1"
+    private static final int VERSION = 2;
+    private static final String FILE_NAME = "network.snapshot";
+
+
+
+    /**
+     * The snapshot is kept next to the stops file.
+     */
+    public static File fileFor(File stopFile) {
+        return new File(stopFile.getAbsoluteFile().getParentFile(), FILE_NAME);
+    }
+
+
+    /**
+     * True if the snapshot exists and was made from the current versions of both files.
+     */
+    public static boolean matches(File snapshot, File stopFile, File tripFile) {
+        if(!snapshot.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 64))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION
+                    && in.readLong() == stopFile.length() && in.readLong() == stopFile.lastModified()
+                    && in.readLong() == tripFile.length() && in.readLong() == tripFile.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Writes the stops, patterns and trips in the given order. The file is written under a temporary name first
+     * so a half written snapshot is never picked up.
+     */
+    public static void write(File snapshot, File stopFile, File tripFile, List<Stop> stops, List<RoutePattern> patterns, List<Trip> trips) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        Map<Stop, Integer> stopNumbers = new HashMap<Stop, Integer>();
+        for(Stop stop : stops) {
+            intern(strings, stop.getStopId());
+            intern(strings, stop.getName());
+            stopNumbers.put(stop, stopNumbers.size());
+        }
+        Map<RoutePattern, Integer> patternNumbers = new HashMap<RoutePattern, Integer>();
+        for(RoutePattern pattern : patterns) {
+            patternNumbers.put(pattern, patternNumbers.size());
+        }
+        for(Trip trip : trips) {
+            intern(strings, trip.getTripId());
+        }
+
+        File temp = new File(snapshot.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stopFile.length());
+            out.writeLong(stopFile.lastModified());
+            out.writeLong(tripFile.length());
+            out.writeLong(tripFile.lastModified());
+
+            out.writeInt(strings.size());
+            for(String s : strings.keySet()) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(stops.size());
+            for(Stop stop : stops) {
+                out.writeInt(strings.get(stop.getStopId()));
+                out.writeInt(strings.get(stop.getName()));
+                out.writeDouble(stop.getStopLocation().x);
+                out.writeDouble(stop.getStopLocation().y);
+            }
+
+            out.writeInt(patterns.size());
+            for(RoutePattern pattern : patterns) {
+                out.writeInt(pattern.size());
+                for(Stop stop : pattern.getStops()) {
+                    out.writeInt(stopNumbers.get(stop));
+                }
+            }
+
+            out.writeInt(trips.size());
+            for(Trip trip : trips) {
+                out.writeInt(strings.get(trip.getTripId()));
+                out.writeInt(patternNumbers.get(trip.getPattern()));
+            }
+        }
+        if(!temp.renameTo(snapshot)) {
+            snapshot.delete();
+            if(!temp.renameTo(snapshot)) {
+                temp.delete();
+                throw new IOException("Could not replace " + snapshot);
+            }
+        }
+    }
+
+
+    /**
+     * Maps the snapshot into memory and recreates its stops, patterns and trips, adding them to the lists in their original order.
+     * The trips are not added to their patterns, that and the connections and the trie are left for the caller to build.
+     */
+    public static void read(File snapshot, List<Stop> stops, List<RoutePattern> patterns, List<Trip> trips) throws IOException {
+        try (FileChannel channel = new FileInputStream(snapshot).getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(snapshot + " is not a network snapshot");
+            }
+            buffer.position(buffer.position() + 4 * Long.BYTES);     //file sizes and times, checked by matches
+
+            String[] strings = new String[buffer.getInt()];
+            byte[] bytes = new byte[64];
+            for(int i = 0; i < strings.length; i++) {
+                int length = buffer.getInt();
+                if(length > bytes.length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            Stop[] stopArray = new Stop[buffer.getInt()];
+            for(int i = 0; i < stopArray.length; i++) {
+                String id = strings[buffer.getInt()];
+                String name = strings[buffer.getInt()];
+                double x = buffer.getDouble();
+                double y = buffer.getDouble();
+                stopArray[i] = new Stop(id, name, new Location(x, y));
+                stops.add(stopArray[i]);
+            }
+
+            RoutePattern[] patternArray = new RoutePattern[buffer.getInt()];
+            for(int i = 0; i < patternArray.length; i++) {
+                Stop[] patternStops = new Stop[buffer.getInt()];
+                for(int j = 0; j < patternStops.length; j++) {
+                    patternStops[j] = stopArray[buffer.getInt()];
+                }
+                patternArray[i] = new RoutePattern(patternStops);
+                patterns.add(patternArray[i]);
+            }
+
+            int tripCount = buffer.getInt();
+            for(int i = 0; i < tripCount; i++) {
+                String id = strings[buffer.getInt()];
+                trips.add(new Trip(id, patternArray[buffer.getInt()]));
+            }
+        } catch (RuntimeException e) {   //underflow or a bad index means the file is damaged
+            throw new IOException(snapshot + " is damaged: " + e);
+        }
+    }
+
+
+    private static void intern(Map<String, Integer> strings, String s) {
+        if(!strings.containsKey(s)) {
+            strings.put(s, strings.size());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batch job for network planning: works out, for every stop, which stops can be reached from it within
+ * 0, 1 and 2 transfers (1, 2 and 3 trips, walking between nearby stops included) and writes them to a file.
+ * Each answer is a bitset over dense stop ids, one row of longs per stop. The rows are independent so they are
+ * shared out over all cores with fork-join, each task running JourneyRouter.tripsNeeded for a block of stops.
+ * The rows are all held in memory, 3 * n * n / 8 bytes for n stops, so networks of more than MAX_STOPS stops
+ * (about 600MB of rows) are refused rather than left to run out of heap part way through.
+ *
+ * Usage: java ReachabilityReport stops.txt trips.txt [output file] [walking radius in km]
+ *
+ * File layout (big endian): magic, version, stop count, number of levels, the stop ids in dense order (UTF),
+ * then for each level (transfers 0, 1, 2) and each stop in order, (stop count + 63) / 64 longs of bits,
+ * bit s of a row being set if stop s can be reached.
+ */
+public class ReachabilityReport {
+
+    private static final int MAGIC = 0x4A505252; //"JPRR"
+    private static final int VERSION = 1;
+    private static final int MAX_TRANSFERS = 2;
+    private static final int STOPS_PER_TASK = 16;
+    public static final int MAX_STOPS = 40_000;
+    private static final String FILE_NAME = "reachability.bin";
+
+
+
+    public static void main(String[] args) {
+        if(args.length < 2) {
+            System.err.println("Usage: java ReachabilityReport stops.txt trips.txt [output file] [walking radius in km]");
+            return;
+        }
+        File stopFile = new File(args[0]);
+        File tripFile = new File(args[1]);
+        File output = args.length > 2 ? new File(args[2]) : new File(stopFile.getAbsoluteFile().getParentFile(), FILE_NAME);
+        double radius = args.length > 3 ? Double.parseDouble(args[3]) : WalkingTransfers.DEFAULT_RADIUS;
+
+        FeedLoader loader = new FeedLoader(new HashMap<String, Stop>(), new HashMap<String, Trip>(), new HashSet<Connection>(), StopNames.create());
+        try {
+            loader.load(stopFile, tripFile);
+        } catch (IOException e) {
+            System.err.println("Error loading the stops and trips files: " + e);
+            return;
+        }
+        List<Stop> stops = loader.getStops();
+        if(stops.size() > MAX_STOPS) {
+            System.err.println(stops.size() + " stops is more than the " + MAX_STOPS + " the report can hold in memory");
+            return;
+        }
+        WalkingTransfers transfers = new WalkingTransfers(stops, new StopKdTree(stops), radius);
+        JourneyRouter router = new JourneyRouter(stops, loader.getTrips(), loader.getPatterns(), transfers);
+
+        ForkJoinPool pool = new ForkJoinPool();
+        long start = System.nanoTime();
+        long[][][] reachable = compute(router, stops, MAX_TRANSFERS, pool);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        try {
+            write(output, stops, reachable);
+        } catch (IOException e) {
+            System.err.println("Error writing " + output + ": " + e);
+            return;
+        }
+        System.out.printf("%d stops, %d walking links, computed in %.1fms on %d threads, written to %s%n",
+                stops.size(), transfers.linkCount(), elapsed / 1e6, pool.getParallelism(), output);
+        for(int level = 0; level < reachable.length; level++) {
+            long total = 0;
+            for(long[] row : reachable[level]) {
+                for(long word : row) {
+                    total += Long.bitCount(word);
+                }
+            }
+            System.out.printf("within %d transfers: %.1f stops reachable on average%n", level, (double) total / Math.max(1, stops.size()));
+        }
+    }
+
+
+    /**
+     * The stops reachable from each stop, as reachable[transfers][from stop][word].
+     * The stops must be in index order, as FeedLoader gives them, and there must be no more than MAX_STOPS.
+     */
+    public static long[][][] compute(JourneyRouter router, List<Stop> stops, int maxTransfers, ForkJoinPool pool) {
+        if(stops.size() > MAX_STOPS) {
+            throw new IllegalArgumentException(stops.size() + " stops is more than the " + MAX_STOPS + " the report can hold in memory");
+        }
+        int words = (stops.size() + 63) / 64;
+        long[][][] reachable = new long[maxTransfers + 1][stops.size()][words];
+        pool.invoke(new RowTask(router, stops, reachable, 0, stops.size()));
+        return reachable;
+    }
+
+
+    /**
+     * Writes the rows under a temporary name first, so a half written file is never left behind.
+     */
+    public static void write(File output, List<Stop> stops, long[][][] reachable) throws IOException {
+        File temp = new File(output.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stops.size());
+            out.writeInt(reachable.length);
+            for(Stop stop : stops) {
+                out.writeUTF(stop.getStopId());
+            }
+            for(long[][] level : reachable) {
+                for(long[] row : level) {
+                    for(long word : row) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        }
+        if(!temp.renameTo(output)) {
+            output.delete();
+            if(!temp.renameTo(output)) {
+                temp.delete();
+                throw new IOException("Could not replace " + output);
+            }
+        }
+    }
+
+
+    /**
+     * Fills in the rows of the stops in [lo, hi), splitting the range in half until it is small enough to do directly.
+     * Every row is written by exactly one task, so no locking is needed.
+     */
+    private static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final JourneyRouter router;
+        private final List<Stop> stops;
+        private final long[][][] reachable;
+        private final int lo;
+        private final int hi;
+
+        RowTask(JourneyRouter router, List<Stop> stops, long[][][] reachable, int lo, int hi) {
+            this.router = router;
+            this.stops = stops;
+            this.reachable = reachable;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if(hi - lo > STOPS_PER_TASK) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new RowTask(router, stops, reachable, lo, mid), new RowTask(router, stops, reachable, mid, hi));
+                return;
+            }
+            int maxTransfers = reachable.length - 1;
+            for(int from = lo; from < hi; from++) {
+                int[] tripsNeeded = router.tripsNeeded(stops.get(from), maxTransfers + 1);
+                for(int to = 0; to < tripsNeeded.length; to++) {
+                    //a stop needing k trips is k - 1 transfers away, so it is in that level and all the ones above
+                    for(int level = Math.max(0, tripsNeeded[to] - 1); tripsNeeded[to] >= 0 && level <= maxTransfers; level++) {
+                        reachable[level][from][to >>> 6] |= 1L << to;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.*;
+
+/**
+ * A sequence of stops run by one or more trips. Trips with the same stops in the same order share a single
+ * pattern, so the stop sequence and the connections along it are only stored (and indexed) once.
+ */
+public class RoutePattern {
+
+    private Stop[] stops;
+    private List<Stop> stopList;        //read only view of stops, also the pattern's key when interning
+    private Connection[] connections;   //connections[i] goes from stops[i] to stops[i + 1]
+    private List<Trip> trips = new ArrayList<Trip>();
+    private int index = -1;     //dense number given at load time
+
+
+
+    public RoutePattern(Stop[] stops) {
+        this.stops = stops;
+        this.stopList = Collections.unmodifiableList(Arrays.asList(stops));
+        this.connections = new Connection[Math.max(0, stops.length - 1)];
+    }
+
+
+    /**
+     * The stops in the order they are visited.
+     * */
+    public List<Stop> getStops() {
+        return stopList;
+    }
+
+
+    public Stop getStop(int position) {
+        return stops[position];
+    }
+
+
+    public int size() {
+        return stops.length;
+    }
+
+
+    /**
+     * The connections in the order they are travelled.
+     * */
+    public List<Connection> getConnections() {
+        return Collections.unmodifiableList(Arrays.asList(connections));
+    }
+
+
+    void setConnection(int position, Connection conn) {
+        connections[position] = conn;
+    }
+
+
+    /**
+     * The trips running the pattern, in load order.
+     * */
+    public List<Trip> getTrips() {
+        return Collections.unmodifiableList(trips);
+    }
+
+
+    void addTrip(Trip trip) {
+        trips.add(trip);
+    }
+
+
+    void removeTrip(Trip trip) {
+        trips.remove(trip);
+    }
+
+
+    public int getIndex() {
+        return index;
+    }
+
+
+    void setIndex(int i) {
+        index = i;
+    }
+}
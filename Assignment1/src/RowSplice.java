@@ -0,0 +1,70 @@
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Copy-on-write for a compressed row layout (see TransitGraph): lays out a new version of the arrays in which some
+ * rows are replaced and every other row is copied from the old version as it is, so a new snapshot's index only
+ * works out the rows an update touched (see TransitNetwork.update).
+ * The kept rows between two replaced ones are next to each other in both versions, so each run of them is
+ * copied with one System.arraycopy.
+ */
+public class RowSplice {
+
+    private int[] oldStart;
+    private int[] start;
+    private int[] replaced;     //the replaced rows below the row count, ascending
+
+
+
+    /**
+     * Works out where each row of the new version starts. Rows past the old row count must be replaced,
+     * replaced rows past the new row count are ignored. length gives the new length of a replaced row.
+     */
+    public RowSplice(int[] oldStart, int rowCount, BitSet replacedRows, IntUnaryOperator length) {
+        this.oldStart = oldStart;
+        replaced = replacedRows.stream().filter((int row) -> row < rowCount).toArray();
+        start = new int[rowCount + 1];
+        int next = 0;
+        for(int row = 0; row < rowCount; row++) {
+            if(next < replaced.length && replaced[next] == row) {
+                start[row + 1] = start[row] + length.applyAsInt(row);
+                next++;
+            } else {
+                start[row + 1] = start[row] + oldStart[row + 1] - oldStart[row];
+            }
+        }
+    }
+
+
+    /**
+     * The start of each row in the new version, with the end of the last at the row count.
+     */
+    public int[] getStart() {
+        return start;
+    }
+
+
+    /**
+     * The replaced rows, ascending, for the caller to fill in at getStart()[row].
+     */
+    public int[] getReplaced() {
+        return replaced;
+    }
+
+
+    /**
+     * Copies every kept row of one of the old version's data arrays into the same place in the new one,
+     * which must be at least getStart()[row count] long and of the same type.
+     */
+    public void copyKept(Object oldData, Object newData) {
+        int rowCount = start.length - 1;
+        int row = 0;
+        for(int next = 0; row < rowCount; next++) {
+            int runEnd = next < replaced.length ? replaced[next] : rowCount;
+            if(runEnd > row) {
+                System.arraycopy(oldData, oldStart[row], newData, start[row], oldStart[runEnd] - oldStart[row]);
+            }
+            row = runEnd + 1;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.*;
+
+/**
+ * What a search or click picked out of one network snapshot: the stops to draw as selected, the connections to
+ * highlight and the text to show. A search fills one in on whichever thread it runs on and then hands it to the
+ * Swing thread, which only reads it from then on.
+ */
+public class Selection {
+
+    private Set<Stop> stops = new HashSet<Stop>();
+    private Set<Connection> connections = new HashSet<Connection>();
+    private String text = "";
+
+
+
+    public void addStop(Stop stop) {
+        stops.add(stop);
+    }
+
+
+    public void addStops(Collection<Stop> stopList) {
+        stops.addAll(stopList);
+    }
+
+
+    public void addConnections(Collection<Connection> connectionList) {
+        connections.addAll(connectionList);
+    }
+
+
+    public Set<Stop> getStops() {
+        return Collections.unmodifiableSet(stops);
+    }
+
+
+    public Set<Connection> getConnections() {
+        return Collections.unmodifiableSet(connections);
+    }
+
+
+    public String getText() {
+        return text;
+    }
+
+
+    public void setText(String text) {
+        this.text = text;
+    }
+}
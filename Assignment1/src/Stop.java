@@ -1,21 +1,19 @@
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
-import java.util.*;
 
+/**
+ * A stop holds no edges: the loader keeps the connections to and from it (see FeedLoader.connectionsOf)
+ * and each snapshot keeps its own in its TransitGraph (see TransitGraph.getOutgoingEdges).
+ */
 public class Stop{
 
     private String stopId;
     private String stopName;
     private Location stopLocation;
-    private Point stopPoint;
-    private Color stopColor;
 
     private int stopSize;
-    private boolean selected;
-
-    private Set<Connection> outgoingEdges = new HashSet<Connection>();
-    private Set<Connection> ingoingEdges = new HashSet<Connection>();
+    private int index = -1;     //dense number given at load time, see NetworkIndex
 
 
 
@@ -24,56 +22,43 @@ public class Stop{
         this.stopName = stopName;
         setStopLocation(stopLat, stopLon);
         stopSize = 5;
-        selected = false;
     }
 
 
     /**
-     * Draws the stop as a rectangle in either black (normally) or the selected colour.
+     * Used when the location has already been worked out, e.g. when reading a saved snapshot.
+     * */
+    public Stop(String stopId, String stopName, Location stopLocation) {
+        this.stopId = stopId;
+        this.stopName = stopName;
+        this.stopLocation = stopLocation;
+        stopSize = 5;
+    }
+
+
+    /**
+     * Draws the stop as a rectangle in either blue (normally) or red if it is selected.
      * Converts to a point initially to draw on the screen.
+     * Whether it is selected is up to the caller, the stop itself has no selection state.
      * */
-    public void drawStop(Graphics g, Location origin, double size) { //size is the amount to zoom in/out
+    public void drawStop(Graphics g, Location origin, double size, boolean selected) { //size is the amount to zoom in/out
         if(selected) {
-            g.setColor(stopColor);
+            g.setColor(Color.RED);
         }else {
             g.setColor(Color.BLUE);
         }
-        stopPoint = stopLocation.asPoint(origin, size);
+        Point stopPoint = stopLocation.asPoint(origin, size);
         g.fillRect(stopPoint.x - (stopSize/2), stopPoint.y - (stopSize/2), stopSize, stopSize);
     }
 
 
-    public void addOutgoingEdge(Connection conn){
-        outgoingEdges.add(conn);
-    }
-
-
-    public void addIngoingEdge(Connection conn){
-        ingoingEdges.add(conn);
-    }
-
-
-    public void unSelect() {
-        selected = false;
-    }
-
-
-    public void select() {
-        selected = true;
-        stopColor = Color.RED;
-    }
-
-
     public String getName() {
         return stopName;
     }
 
 
-    /**
-     * Point location of the stop
-     * */
-    public Point getPoint() {
-        return stopPoint;
+    void setName(String name) {
+        stopName = name;
     }
 
 
@@ -82,51 +67,38 @@ public class Stop{
     }
 
 
-    public void setStopSize(int stopS) {
+    void setStopSize(int stopS) {
         stopSize = stopS;
     }
 
 
-    /**
-     * Contains all the outgoing edges of the stop
-     * */
-    public Set<Connection> getOutgoingEdges(){
-        return Collections.unmodifiableSet(outgoingEdges);
+    public Location getStopLocation() {
+        return stopLocation;
     }
 
 
-    /**
-     * Contains all the ingoing edges of the stop
-     * */
-    public Set<Connection> getIngoingEdges(){
-        return Collections.unmodifiableSet(ingoingEdges);
+    public String getStopId() {
+        return stopId;
     }
 
 
     /**
-     * Returns all the ingoing and outgoing edges of the stop
+     * The stop's position in load order, used to index the arrays of NetworkIndex.
      * */
-    public Set<Connection> getAllEdgesOfStop(){
-        Set<Connection> allStopEdges = new HashSet<Connection>(ingoingEdges);
-        allStopEdges.addAll(outgoingEdges);
-        return Collections.unmodifiableSet(allStopEdges);
+    public int getIndex() {
+        return index;
     }
 
 
-    public Location getStopLocation() {
-        return stopLocation;
-    }
-
-
-    public String getStopId() {
-        return stopId;
+    void setIndex(int i) {
+        index = i;
     }
 
 
     /**
      *  Creates the location object of the stop based on its parameters.
      * */
-    private void setStopLocation(float lati, float longi) {
+    void setStopLocation(float lati, float longi) {
         stopLocation = Location.newFromLatLon(lati, longi);
     }
 }
\ No newline at end of file
@@ -0,0 +1,362 @@
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A 2d tree over the stops' locations for nearest stop queries.
+ * The tree is implicit: the stops are reordered so that for any range [lo, hi) of the arrays the middle
+ * element splits the rest on x (even depths) or y (odd depths), with the smaller ones to its left.
+ * Coordinates are copied into primitive arrays so a query never touches the Stop or Location objects.
+ * A tree for a network with a few stops changed shares the arrays of the last one (see the updating constructor).
+ */
+public class StopKdTree {
+
+    //the tree is built again once the stops changed since it was built are more than 1 / REBUILD_SHARE of them
+    private static final int REBUILD_SHARE = 64;
+
+    private Stop[] stops;
+    private double[] xs;
+    private double[] ys;
+    //changes since the arrays were built: stops in them that queries skip, and stops not in them that are checked one by one
+    private Set<Stop> removed = Collections.emptySet();
+    private Stop[] added = new Stop[0];
+
+
+
+    public StopKdTree(Collection<Stop> stopList) {
+        build(stopList.toArray(new Stop[0]));
+    }
+
+
+    /**
+     * The tree over stopList, which is previous's stops without the removed ones and with the added ones.
+     * It shares previous's arrays, skipping the removed stops in them and checking the added ones one by one,
+     * unless that would make too many changes since they were built, when the tree is built again.
+     */
+    public StopKdTree(StopKdTree previous, Collection<Stop> stopList, Collection<Stop> removedStops, Collection<Stop> addedStops) {
+        Set<Stop> fromTree = identitySet(removedStops);
+        List<Stop> extra = new ArrayList<Stop>();
+        for(Stop stop : previous.added) {
+            if(!fromTree.remove(stop)) {
+                extra.add(stop);
+            }
+        }
+        extra.addAll(addedStops);
+        Set<Stop> gone = identitySet(previous.removed);
+        gone.addAll(fromTree);
+        if((long) (gone.size() + extra.size()) * REBUILD_SHARE > stopList.size()) {
+            build(stopList.toArray(new Stop[0]));
+            return;
+        }
+        stops = previous.stops;
+        xs = previous.xs;
+        ys = previous.ys;
+        removed = gone;
+        added = extra.toArray(new Stop[0]);
+    }
+
+
+    private static Set<Stop> identitySet(Collection<Stop> from) {
+        Set<Stop> set = Collections.newSetFromMap(new IdentityHashMap<Stop, Boolean>());
+        set.addAll(from);
+        return set;
+    }
+
+
+    private void build(Stop[] stopArray) {
+        stops = stopArray;
+        xs = new double[stops.length];
+        ys = new double[stops.length];
+        for(int i = 0; i < stops.length; i++) {
+            xs[i] = stops[i].getStopLocation().x;
+            ys[i] = stops[i].getStopLocation().y;
+        }
+        build(0, stops.length, 0);
+    }
+
+
+    /**
+     * The stop closest to the location, or null if there are no stops.
+     */
+    public Stop nearest(Location location) {
+        List<Stop> found = kNearest(location, 1);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+
+    /**
+     * The k stops closest to the location, closest first.
+     * Subtrees are skipped when the splitting line is further away than the k-th best found so far, so the added
+     * stops are offered first. They are numbered after the tree's.
+     */
+    public List<Stop> kNearest(Location location, int count) {
+        Candidates best = new Candidates(Math.min(count, size()));
+        if(best.k > 0) {
+            for(int i = 0; i < added.length; i++) {
+                best.offer(stops.length + i, distanceSq(added[i], location.x, location.y));
+            }
+            search(0, stops.length, 0, location.x, location.y, best);
+        }
+
+        Stop[] sorted = new Stop[best.size];
+        while(best.size > 0) {
+            int found = best.stops[0];
+            sorted[best.size - 1] = found < stops.length ? stops[found] : added[found - stops.length];
+            best.removeFurthest();
+        }
+        return Arrays.asList(sorted);
+    }
+
+
+    /**
+     * Passes every stop inside the rectangle to the visitor, skipping subtrees on the wrong side of a split.
+     */
+    public void inRange(double minX, double minY, double maxX, double maxY, Consumer<Stop> visitor) {
+        inRange(0, stops.length, 0, minX, minY, maxX, maxY, visitor);
+        for(Stop stop : added) {
+            Location at = stop.getStopLocation();
+            if(at.x >= minX && at.x <= maxX && at.y >= minY && at.y <= maxY) {
+                visitor.accept(stop);
+            }
+        }
+    }
+
+
+    private void inRange(int lo, int hi, int depth, double minX, double minY, double maxX, double maxY, Consumer<Stop> visitor) {
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(xs[mid] >= minX && xs[mid] <= maxX && ys[mid] >= minY && ys[mid] <= maxY && !removed.contains(stops[mid])) {
+                visitor.accept(stops[mid]);
+            }
+            double split = (depth % 2 == 0) ? xs[mid] : ys[mid];
+            double min = (depth % 2 == 0) ? minX : minY;
+            double max = (depth % 2 == 0) ? maxX : maxY;
+            boolean left = min <= split;
+            boolean right = max >= split;
+            depth++;
+            if(left && right) {
+                inRange(lo, mid, depth, minX, minY, maxX, maxY, visitor);
+                lo = mid + 1;
+            } else if(left) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+    }
+
+
+    /**
+     * Passes every stop no further than the radius from the centre to the visitor, in no particular order.
+     * Subtrees are skipped when the splitting line is further away than the radius.
+     */
+    public void withinRadius(Location centre, double radius, Consumer<Stop> visitor) {
+        if(radius < 0) {
+            return;
+        }
+        withinRadius(0, stops.length, 0, centre.x, centre.y, radius, visitor);
+        for(Stop stop : added) {
+            if(distanceSq(stop, centre.x, centre.y) <= radius * radius) {
+                visitor.accept(stop);
+            }
+        }
+    }
+
+
+    private void withinRadius(int lo, int hi, int depth, double x, double y, double radius, Consumer<Stop> visitor) {
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double dx = xs[mid] - x;
+            double dy = ys[mid] - y;
+            if(dx * dx + dy * dy <= radius * radius && !removed.contains(stops[mid])) {
+                visitor.accept(stops[mid]);
+            }
+            double diff = (depth % 2 == 0) ? x - xs[mid] : y - ys[mid];
+            depth++;
+            if(Math.abs(diff) <= radius) {
+                withinRadius(lo, mid, depth, x, y, radius, visitor);
+                lo = mid + 1;
+            } else if(diff < 0) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+    }
+
+
+    private static double distanceSq(Stop stop, double x, double y) {
+        double dx = stop.getStopLocation().x - x;
+        double dy = stop.getStopLocation().y - y;
+        return dx * dx + dy * dy;
+    }
+
+
+    /**
+     * The number of stops, not counting the removed ones still in the arrays.
+     */
+    public int size() {
+        return stops.length - removed.size() + added.length;
+    }
+
+
+    private void search(int lo, int hi, int depth, double x, double y, Candidates best) {
+        if(lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double dx = xs[mid] - x;
+        double dy = ys[mid] - y;
+        if(!removed.contains(stops[mid])) {
+            best.offer(mid, dx * dx + dy * dy);
+        }
+
+        double diff = (depth % 2 == 0) ? x - xs[mid] : y - ys[mid];
+        //the side the point is on first, the other side only if it could hold something closer
+        if(diff < 0) {
+            search(lo, mid, depth + 1, x, y, best);
+            if(best.couldImprove(diff * diff)) {
+                search(mid + 1, hi, depth + 1, x, y, best);
+            }
+        } else {
+            search(mid + 1, hi, depth + 1, x, y, best);
+            if(best.couldImprove(diff * diff)) {
+                search(lo, mid, depth + 1, x, y, best);
+            }
+        }
+    }
+
+
+    /**
+     * Puts the median of [lo, hi) on the depth's axis in the middle, then does the same for each side.
+     */
+    private void build(int lo, int hi, int depth) {
+        if(hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, depth % 2 == 0 ? xs : ys);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+
+    /**
+     * Quickselect: rearranges [lo, hi] so that position n holds the value that would be there if sorted by the key.
+     */
+    private void select(int lo, int hi, int n, double[] key) {
+        while(hi > lo) {
+            double pivot = key[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while(i <= j) {
+                while(key[i] < pivot) {
+                    i++;
+                }
+                while(key[j] > pivot) {
+                    j--;
+                }
+                if(i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if(n <= j) {
+                hi = j;
+            } else if(n >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+
+    private void swap(int i, int j) {
+        Stop stop = stops[i];
+        stops[i] = stops[j];
+        stops[j] = stop;
+        double x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        double y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+    }
+
+
+    /**
+     * The best stops found so far by one query, as a max heap on squared distance so the furthest is on top.
+     * Each query has its own, so queries can run at the same time.
+     */
+    private static class Candidates {
+        final int k;
+        final int[] stops;
+        final double[] dist;
+        int size;
+
+        Candidates(int k) {
+            this.k = k;
+            stops = new int[k];
+            dist = new double[k];
+        }
+
+
+        /**
+         * True if something at this squared distance could still make it into the heap.
+         */
+        boolean couldImprove(double distSq) {
+            return size < k || distSq < dist[0];
+        }
+
+
+        /**
+         * Keeps the stop if there is room in the heap or it is closer than the furthest kept.
+         */
+        void offer(int stop, double distSq) {
+            if(size < k) {
+                int i = size++;
+                while(i > 0 && dist[(i - 1) / 2] < distSq) {
+                    stops[i] = stops[(i - 1) / 2];
+                    dist[i] = dist[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                stops[i] = stop;
+                dist[i] = distSq;
+            } else if(distSq < dist[0]) {
+                siftDown(stop, distSq);
+            }
+        }
+
+
+        void removeFurthest() {
+            size--;
+            if(size > 0) {
+                siftDown(stops[size], dist[size]);
+            }
+        }
+
+
+        /**
+         * Puts the stop at the top of the heap and moves it down to its place.
+         */
+        void siftDown(int stop, double distSq) {
+            int i = 0;
+            while(true) {
+                int child = 2 * i + 1;
+                if(child >= size) {
+                    break;
+                }
+                if(child + 1 < size && dist[child + 1] > dist[child]) {
+                    child++;
+                }
+                if(dist[child] <= distSq) {
+                    break;
+                }
+                stops[i] = stops[child];
+                dist[i] = dist[child];
+                i = child;
+            }
+            stops[i] = stop;
+            dist[i] = distSq;
+        }
+    }
+}
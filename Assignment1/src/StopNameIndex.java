@@ -0,0 +1,248 @@
+import java.util.*;
+
+/**
+ * Finds stops whose name contains some text anywhere, e.g. "interchange" or "004", which the prefix
+ * only Trie can't answer.
+ * All the names are lower cased (in the root locale, so the index doesn't change with the user's) and joined
+ * into one char array, each ending with a separator, and a suffix array is built over it: the start of every
+ * suffix, sorted. The suffixes beginning with the search text are then one block of the array, found with two
+ * binary searches, so a search costs about |text| * log(total name length) plus the number of matches.
+ * An index for a network with a few stops changed shares the arrays of the last one (see the updating constructor).
+ */
+public class StopNameIndex {
+
+    private static final char SEPARATOR = '\0';
+    //the arrays are built again once the stops changed since they were built are more than 1 / REBUILD_SHARE of them
+    private static final int REBUILD_SHARE = 64;
+
+    private Stop[] stops;
+    private int[] nameStart;    //where each stop's name starts in text
+    private char[] text;
+    private int[] suffixes;
+    //changes since the arrays were built: stops in them that searches skip, and stops not in them that are checked one by one
+    private Set<Stop> removed = Collections.emptySet();
+    private Stop[] added = new Stop[0];
+    private String[] addedNames = new String[0];    //lower cased
+
+
+
+    /**
+     * Builds the index over the stops' names.
+     */
+    public StopNameIndex(Collection<Stop> stopList) {
+        build(stopList.toArray(new Stop[0]));
+    }
+
+
+    /**
+     * The index over stopList, which is previous's stops without the removed ones and with the added ones.
+     * It shares previous's arrays, skipping the removed stops in them and checking the added ones one by one,
+     * unless that would make too many changes since they were built, when the arrays are built again.
+     */
+    public StopNameIndex(StopNameIndex previous, Collection<Stop> stopList, Collection<Stop> removedStops, Collection<Stop> addedStops) {
+        Set<Stop> fromArrays = identitySet(removedStops);
+        List<Stop> extra = new ArrayList<Stop>();
+        for(Stop stop : previous.added) {
+            if(!fromArrays.remove(stop)) {
+                extra.add(stop);
+            }
+        }
+        extra.addAll(addedStops);
+        Set<Stop> gone = identitySet(previous.removed);
+        gone.addAll(fromArrays);
+        if((long) (gone.size() + extra.size()) * REBUILD_SHARE > stopList.size()) {
+            build(stopList.toArray(new Stop[0]));
+            return;
+        }
+        stops = previous.stops;
+        nameStart = previous.nameStart;
+        text = previous.text;
+        suffixes = previous.suffixes;
+        removed = gone;
+        added = extra.toArray(new Stop[0]);
+        addedNames = new String[added.length];
+        for(int i = 0; i < added.length; i++) {
+            addedNames[i] = lowerCase(added[i].getName());
+        }
+    }
+
+
+    private static Set<Stop> identitySet(Collection<Stop> from) {
+        Set<Stop> set = Collections.newSetFromMap(new IdentityHashMap<Stop, Boolean>());
+        set.addAll(from);
+        return set;
+    }
+
+
+    private void build(Stop[] stopArray) {
+        stops = stopArray;
+        nameStart = new int[stops.length];
+        String[] names = new String[stops.length];     //lower casing can change a name's length, so size from these
+        int length = 0;
+        for(int i = 0; i < stops.length; i++) {
+            names[i] = lowerCase(stops[i].getName());
+            length += names[i].length() + 1;
+        }
+        text = new char[length];
+        suffixes = new int[length - stops.length];
+        int pos = 0;
+        int suffix = 0;
+        for(int i = 0; i < stops.length; i++) {
+            nameStart[i] = pos;
+            String name = names[i];
+            for(int j = 0; j < name.length(); j++) {
+                suffixes[suffix++] = pos;
+                text[pos++] = name.charAt(j);
+            }
+            text[pos++] = SEPARATOR;
+        }
+        sort(0, suffixes.length, 0);
+    }
+
+
+    /**
+     * Every stop whose name contains the text (ignoring case), each stop once.
+     */
+    public List<Stop> find(String search) {
+        List<Stop> results = new ArrayList<Stop>();
+        String lowered = lowerCase(search);
+        char[] query = lowered.toCharArray();
+        if(query.length == 0) {
+            return results;
+        }
+        int from = lowerBound(query, false);
+        int to = lowerBound(query, true);
+        Set<Integer> seen = new HashSet<Integer>();
+        for(int i = from; i < to; i++) {
+            int owner = ownerOf(suffixes[i]);
+            if(seen.add(owner) && !removed.contains(stops[owner])) {
+                results.add(stops[owner]);
+            }
+        }
+        for(int i = 0; i < added.length; i++) {
+            if(addedNames[i].contains(lowered)) {
+                results.add(added[i]);
+            }
+        }
+        return results;
+    }
+
+
+    /**
+     * The first suffix that is not less than the query, or with after set the first suffix that does not
+     * start with the query and is greater than it.
+     */
+    private int lowerBound(char[] query, boolean after) {
+        int low = 0;
+        int high = suffixes.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparePrefix(suffixes[mid], query);
+            if(cmp < 0 || (after && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * Compares the suffix against the query, only looking at the query's length of the suffix,
+     * so 0 means the suffix starts with the query.
+     */
+    private int comparePrefix(int suffix, char[] query) {
+        for(int i = 0; i < query.length; i++) {
+            char c = text[suffix + i];
+            if(c != query[i]) {
+                return c < query[i] ? -1 : 1;   //the separator is less than everything, so a name never runs into the next
+            }
+        }
+        return 0;
+    }
+
+
+    private static String lowerCase(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+
+    private int ownerOf(int pos) {
+        int found = Arrays.binarySearch(nameStart, pos);
+        return found >= 0 ? found : -found - 2;
+    }
+
+
+    /**
+     * Multikey quicksort (Bentley and Sedgewick) of suffixes[from, to) which are known to agree on the first
+     * depth characters. It splits on the character at depth into less, equal and greater parts and only the
+     * equal part moves on to the next character.
+     */
+    private void sort(int from, int to, int depth) {
+        while(to - from > 1) {
+            if(to - from < 12) {
+                insertionSort(from, to, depth);
+                return;
+            }
+            char pivot = charAt(suffixes[from + (to - from) / 2], depth);
+            int lt = from;
+            int gt = to - 1;
+            int i = from;
+            while(i <= gt) {
+                char c = charAt(suffixes[i], depth);
+                if(c < pivot) {
+                    swap(lt++, i++);
+                } else if(c > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            sort(from, lt, depth);
+            sort(gt + 1, to, depth);
+            if(pivot == SEPARATOR) {
+                return;     //these names have all ended, so they are equal
+            }
+            from = lt;
+            to = gt + 1;
+            depth++;
+        }
+    }
+
+
+    private void insertionSort(int from, int to, int depth) {
+        for(int i = from + 1; i < to; i++) {
+            for(int j = i; j > from && compareFrom(suffixes[j], suffixes[j - 1], depth) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+
+    private int compareFrom(int a, int b, int depth) {
+        while(true) {
+            char ca = text[a + depth];
+            char cb = text[b + depth];
+            if(ca != cb) {
+                return ca < cb ? -1 : 1;
+            }
+            if(ca == SEPARATOR) {
+                return 0;
+            }
+            depth++;
+        }
+    }
+
+
+    private char charAt(int suffix, int depth) {
+        return text[suffix + depth];
+    }
+
+
+    private void swap(int i, int j) {
+        int temp = suffixes[i];
+        suffixes[i] = suffixes[j];
+        suffixes[j] = temp;
+    }
+}
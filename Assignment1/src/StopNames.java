@@ -0,0 +1,45 @@
+import java.util.*;
+
+/**
+ * Stops kept by name, with every stop under a prefix listed: the contract Trie and CompactTrie share,
+ * so the loader can keep its names in either (see FeedLoader).
+ * Each word holds at most one stop.
+ */
+public interface StopNames {
+
+    //system property choosing the implementation create makes
+    String PROPERTY = "stopnames";
+
+
+    /**
+     * Puts the stop under the word, returning the stop that was there before, if any.
+     */
+    Stop add(char[] word, Stop stop);
+
+
+    /**
+     * Takes the stop off the word, if it is the stop stored there.
+     */
+    void remove(char[] word, Stop stop);
+
+
+    /**
+     * The stop stored under exactly this word, or null.
+     */
+    Stop get(char[] word);
+
+
+    /**
+     * All the stops stored under a word starting with the prefix, in no particular order, or null if there are none.
+     */
+    List<Stop> getAll(char[] prefix);
+
+
+    /**
+     * An empty set of names, a CompactTrie if the system property stopnames is "compact" (e.g. -Dstopnames=compact)
+     * and a Trie otherwise.
+     */
+    static StopNames create() {
+        return "compact".equals(System.getProperty(PROPERTY)) ? new CompactTrie() : new Trie();
+    }
+}
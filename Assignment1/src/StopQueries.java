@@ -0,0 +1,224 @@
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The queries behind the planner's search box and mouse clicks, answered against one snapshot of the network.
+ * Each query returns a Selection rather than touching any Swing state, so the same code runs on the planner's
+ * search thread and in headless tools such as BatchQueryRunner.
+ */
+public class StopQueries {
+
+    public static final int MAX_RESULTS = 10;   //stops listed for a prefix search
+    public static final String JOURNEY_SEPARATOR = "->";  //searching "stop -> stop" plans a journey
+
+
+
+    /**
+     * Everything the search box does for the text: the stop with that name and its trips, the stops starting with it,
+     * containing it, or a typo or two away from it, or a journey for "from -> to".
+     * superseded is checked before each of the slower steps, and once it is true the search gives up and
+     * returns whatever it had.
+     */
+    public static Selection search(TransitNetwork net, String searchText, BooleanSupplier superseded) {
+        Selection found = new Selection();
+        if(searchText != null && !searchText.equals("")) {
+            findStops(net, found, searchText, superseded);
+        }
+        return found;
+    }
+
+
+    /**
+     * The stop closest to the location, as a mouse click selects it.
+     */
+    public static Selection nearest(TransitNetwork net, Location location) {
+        Selection found = new Selection();
+        Stop closestStop = net.nearest(location);
+        if(closestStop != null) {
+            selectStop(net, found, closestStop, false);
+        }
+        return found;
+    }
+
+
+    /**
+     * The stop with the trips through it highlighted, as searching for its full name does.
+     */
+    public static Selection tripsThrough(TransitNetwork net, Stop stop) {
+        Selection found = new Selection();
+        selectStop(net, found, stop, true);
+        return found;
+    }
+
+
+    /**
+     * Checks if there is a stop containing the characters that has been typed
+     * it is selected and highlighted for all stops that contain the certain characters.
+     * For a prefix only the stops serving the most trips are selected, so a short prefix stays quick.
+     * If nothing starts with the text, stops with the text anywhere in their name are selected, and failing that
+     * stops starting with something a typo or two away are suggested.
+     * Text of the form "from -> to" plans a journey between the two stops instead.
+     */
+    private static void findStops(TransitNetwork net, Selection found, String searchText, BooleanSupplier superseded) {
+        if(searchText.contains(JOURNEY_SEPARATOR)) {
+            planJourney(net, found, searchText);
+            return;
+        }
+        Stop foundStop = net.findByName(searchText);
+        if(foundStop == null) {
+            List<Stop> foundStops = net.topWithPrefix(searchText);
+            if(foundStops != null) {
+                selectStop(net, found, foundStops, net.countWithPrefix(searchText), "Name of Stops matching Search prefix: ", false);
+                return;
+            }
+            if(superseded.getAsBoolean()) {
+                return;
+            }
+            foundStops = net.findContaining(searchText);
+            if(!foundStops.isEmpty()) {
+                int matchCount = foundStops.size();
+                foundStops.sort(net.byTripsServed());
+                selectStop(net, found, foundStops.subList(0, Math.min(MAX_RESULTS, matchCount)), matchCount, "Name of Stops containing Search text: ", false);
+                return;
+            }
+            if(superseded.getAsBoolean()) {
+                return;
+            }
+            foundStops = net.withinTypos(searchText, typosAllowed(searchText));
+            if(!foundStops.isEmpty()) {
+                selectStop(net, found, foundStops, foundStops.size(), "No Stops match Search prefix, did you mean: ", false);
+            }
+        }else {
+            selectStop(net, found, foundStop, true);
+        }
+    }
+
+
+    /**
+     * Finds the stops either side of the separator (an exact name, or else the best match for it as a prefix),
+     * then selects them and highlights the journey between them with the fewest changes.
+     */
+    private static void planJourney(TransitNetwork net, Selection found, String searchText) {
+        int split = searchText.indexOf(JOURNEY_SEPARATOR);
+        Stop from = bestMatch(net, searchText.substring(0, split).trim());
+        Stop to = bestMatch(net, searchText.substring(split + JOURNEY_SEPARATOR.length()).trim());
+        if(from == null || to == null) {
+            found.setText("No Stop found for " + (from == null ? "the start" : "the destination") + " of the journey.");
+            return;
+        }
+        found.addStop(from);
+        found.addStop(to);
+
+        List<JourneyRouter.Leg> legs = net.getRouter().fewestTransfers(from, to);
+        String journey = "Journey from " + from.getName() + " to " + to.getName() + ":\n";
+        if(legs == null) {
+            found.setText(journey + "No journey found.");
+            return;
+        }
+        int tripCount = 0;
+        for(JourneyRouter.Leg leg : legs) {
+            journey += leg + "\n";
+            highlightLeg(net, found, leg);
+            if(!leg.isWalk()) {
+                tripCount++;
+            }
+        }
+        found.setText(journey + "Changes: " + Math.max(0, tripCount - 1));
+    }
+
+
+    private static Stop bestMatch(TransitNetwork net, String name) {
+        Stop found = net.findByName(name);
+        if(found == null) {
+            List<Stop> top = net.topWithPrefix(name);
+            if(top != null && !top.isEmpty()) {
+                found = top.get(0);
+            }
+        }
+        return found;
+    }
+
+
+    /**
+     * Highlights the connections of the leg's trip between the positions it is boarded and left at, which the
+     * router keeps so a trip passing the same stop twice highlights the part actually ridden.
+     * A walk has no connections, so its stops are selected instead.
+     */
+    private static void highlightLeg(TransitNetwork net, Selection found, JourneyRouter.Leg leg) {
+        if(leg.isWalk()) {
+            found.addStop(leg.from);
+            found.addStop(leg.to);
+            return;
+        }
+        List<Connection> tripConnections = net.getIndex().connectionsOf(leg.trip.getIndex());
+        found.addConnections(tripConnections.subList(leg.board, leg.alight));
+    }
+
+
+    /**
+     * Short searches only allow one typo, otherwise two typos would match almost everything.
+     */
+    private static int typosAllowed(String searchText) {
+        return searchText.length() < 5 ? 1 : 2;
+    }
+
+
+    /**
+     * Selects the stop within the stop class which will be drawn in red.
+     * A set will be used to store the trip Ids.
+     * No duplicates are stored, the names of the stops and trip Ids are printed.
+     * The trips are highlighted if the boolean is true.
+     */
+    private static void selectStop(TransitNetwork net, Selection found, Stop selStop, boolean highlightTripsOn){
+        found.addStop(selStop);
+        BitSet stopTrips = net.getIndex().tripsThrough(Collections.singleton(selStop));
+        found.setText("Selected Stop Name: " + selStop.getName() + "\nID's of Trips through this Stop: " + tripIds(net, stopTrips));
+
+        if(highlightTripsOn) {
+            highlightTrips(net, found, stopTrips);
+        }
+    }
+
+
+    /**
+     * Selects the listed stops, matchCount is the total number of stops matching the search
+     * which may be more than were listed. The names are printed after the heading.
+     */
+    private static void selectStop(TransitNetwork net, Selection found, List<Stop> stops, int matchCount, String heading, boolean highlightTripsOn){
+        found.addStops(stops);
+
+        BitSet stopTrips = net.getIndex().tripsThrough(stops);
+        String namesMatch = heading;
+        for(Stop stop : stops) {
+            namesMatch += stop.getName() + ", ";
+        }
+        if(matchCount > stops.size()) {
+            namesMatch += "and " + (matchCount - stops.size()) + " more";
+        }
+        found.setText(namesMatch + "\nID's of Trips through this Stop: " + tripIds(net, stopTrips));
+
+        if(highlightTripsOn) {
+            highlightTrips(net, found, stopTrips);
+        }
+    }
+
+
+    private static String tripIds(TransitNetwork net, BitSet trips) {
+        List<String> ids = new ArrayList<String>();
+        for(int t = trips.nextSetBit(0); t >= 0; t = trips.nextSetBit(t + 1)) {
+            ids.add(net.getIndex().getTrip(t).getTripId());
+        }
+        return ids.toString();
+    }
+
+
+    /**
+     * Selects all the connections for all the trips related to stops, the trips are given by their index.
+     * Only the connections of those trips are looked at.
+     */
+    public static void highlightTrips(TransitNetwork net, Selection found, BitSet stopTrips) {
+        for(int t = stopTrips.nextSetBit(0); t >= 0; t = stopTrips.nextSetBit(t + 1)) {
+            found.addConnections(net.getIndex().connectionsOf(t));
+        }
+    }
+}
@@ -0,0 +1,299 @@
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * The stops and connections as a graph over dense int ids, stored in compressed sparse row form.
+ * The connections leaving stop s are outEdge[outStart[s]] up to outStart[s + 1] and lead to the stops in outTarget
+ * at the same positions; inStart, inEdge and inSource are the same for the connections arriving at s.
+ * Traversals read these int arrays rather than the Stop and Connection objects, which stay available
+ * through getStop and getConnection for anything that needs them.
+ * The graph is also where a snapshot's stops get their edges from (see getOutgoingEdges), as the stops themselves
+ * are shared by every snapshot they are unchanged in and so can't hold the connections of any one of them.
+ */
+public class TransitGraph {
+
+    private Stop[] stops;
+    private Connection[] connections;
+
+    private int[] outStart;
+    private int[] outEdge;
+    private int[] outTarget;
+
+    private int[] inStart;
+    private int[] inEdge;
+    private int[] inSource;
+
+
+    /**
+     * The stops and connections must be in index order (see getIndex on each), as FeedLoader gives them.
+     */
+    public TransitGraph(List<Stop> stopList, List<Connection> connectionList) {
+        stops = stopList.toArray(new Stop[0]);
+        connections = connectionList.toArray(new Connection[0]);
+        int n = stops.length;
+        int m = connections.length;
+
+        int[] from = new int[m];
+        int[] to = new int[m];
+        outStart = new int[n + 1];
+        inStart = new int[n + 1];
+        for(int e = 0; e < m; e++) {
+            from[e] = connections[e].getFromStop().getIndex();
+            to[e] = connections[e].getToStop().getIndex();
+            outStart[from[e] + 1]++;
+            inStart[to[e] + 1]++;
+        }
+        for(int s = 0; s < n; s++) {
+            outStart[s + 1] += outStart[s];
+            inStart[s + 1] += inStart[s];
+        }
+
+        outEdge = new int[m];
+        outTarget = new int[m];
+        inEdge = new int[m];
+        inSource = new int[m];
+        int[] nextOut = Arrays.copyOf(outStart, n);
+        int[] nextIn = Arrays.copyOf(inStart, n);
+        for(int e = 0; e < m; e++) {
+            int o = nextOut[from[e]]++;
+            outEdge[o] = e;
+            outTarget[o] = to[e];
+            int i = nextIn[to[e]]++;
+            inEdge[i] = e;
+            inSource[i] = from[e];
+        }
+    }
+
+
+    /**
+     * The graph of previous brought up to date with the new stops and connections, where changedStops and
+     * changedConnections are the indexes whose object is not the one previous was built with (see TransitNetwork.update).
+     * Only the rows of the changed stops and of the stops a changed connection leaves or arrives at (before and after)
+     * are worked out again, every other row is copied.
+     */
+    public TransitGraph(TransitGraph previous, List<Stop> stopList, List<Connection> connectionList, BitSet changedStops, BitSet changedConnections) {
+        stops = stopList.toArray(new Stop[0]);
+        connections = connectionList.toArray(new Connection[0]);
+
+        int[][] out = patchRows(previous.connections, previous.outStart, previous.outEdge, previous.outTarget, changedStops, changedConnections,
+                (Connection conn) -> conn.getFromStop().getIndex(), (Connection conn) -> conn.getToStop().getIndex());
+        outStart = out[0];
+        outEdge = out[1];
+        outTarget = out[2];
+        int[][] in = patchRows(previous.connections, previous.inStart, previous.inEdge, previous.inSource, changedStops, changedConnections,
+                (Connection conn) -> conn.getToStop().getIndex(), (Connection conn) -> conn.getFromStop().getIndex());
+        inStart = in[0];
+        inEdge = in[1];
+        inSource = in[2];
+    }
+
+
+    /**
+     * The start, edge and other end arrays of one direction of this graph, made from the previous graph's arrays of that direction.
+     * rowOf gives the stop whose row a connection is in and otherOf the stop at its other end. A replaced row is
+     * worked out from the connections of the row that are unchanged plus the changed ones in the row now.
+     */
+    private int[][] patchRows(Connection[] previousConnections, int[] previousStart, int[] previousEdge, int[] previousOther,
+            BitSet changedStops, BitSet changedConnections,
+            ToIntFunction<Connection> rowOf, ToIntFunction<Connection> otherOf) {
+        int n = stops.length;
+        int m = connections.length;
+        BitSet rows = (BitSet) changedStops.clone();
+        Map<Integer, List<Integer>> added = new HashMap<Integer, List<Integer>>();
+        for(int e = changedConnections.nextSetBit(0); e >= 0; e = changedConnections.nextSetBit(e + 1)) {
+            if(e < previousConnections.length) {
+                rows.set(rowOf.applyAsInt(previousConnections[e]));
+            }
+            if(e < m) {
+                int row = rowOf.applyAsInt(connections[e]);
+                rows.set(row);
+                added.computeIfAbsent(row, (Integer s) -> new ArrayList<Integer>()).add(e);
+            }
+        }
+
+        Map<Integer, int[]> rowEdges = new HashMap<Integer, int[]>();
+        for(int s = rows.nextSetBit(0); s >= 0 && s < n; s = rows.nextSetBit(s + 1)) {
+            List<Integer> edges = new ArrayList<Integer>(added.getOrDefault(s, Collections.emptyList()));
+            if(!changedStops.get(s)) {
+                for(int i = previousStart[s]; i < previousStart[s + 1]; i++) {
+                    if(!changedConnections.get(previousEdge[i])) {
+                        edges.add(previousEdge[i]);
+                    }
+                }
+            }
+            rowEdges.put(s, edges.stream().mapToInt(Integer::intValue).sorted().toArray());
+        }
+
+        RowSplice splice = new RowSplice(previousStart, n, rows, (int s) -> rowEdges.get(s).length);
+        int[] start = splice.getStart();
+        int[] edge = new int[start[n]];
+        int[] other = new int[start[n]];
+        splice.copyKept(previousEdge, edge);
+        splice.copyKept(previousOther, other);
+        for(int s : splice.getReplaced()) {
+            int o = start[s];
+            for(int e : rowEdges.get(s)) {
+                edge[o] = e;
+                other[o++] = otherOf.applyAsInt(connections[e]);
+            }
+        }
+        return new int[][] {start, edge, other};
+    }
+
+
+    public int stopCount() {
+        return stops.length;
+    }
+
+
+    public int connectionCount() {
+        return connections.length;
+    }
+
+
+    public Stop getStop(int stop) {
+        return stops[stop];
+    }
+
+
+    public Connection getConnection(int connection) {
+        return connections[connection];
+    }
+
+
+    /**
+     * Position of the stop's first outgoing connection in outEdge/outTarget, its last is at outEnd(stop) - 1.
+     */
+    public int outBegin(int stop) {
+        return outStart[stop];
+    }
+
+
+    public int outEnd(int stop) {
+        return outStart[stop + 1];
+    }
+
+
+    public int outEdge(int position) {
+        return outEdge[position];
+    }
+
+
+    public int outTarget(int position) {
+        return outTarget[position];
+    }
+
+
+    public int inBegin(int stop) {
+        return inStart[stop];
+    }
+
+
+    public int inEnd(int stop) {
+        return inStart[stop + 1];
+    }
+
+
+    public int inEdge(int position) {
+        return inEdge[position];
+    }
+
+
+    public int inSource(int position) {
+        return inSource[position];
+    }
+
+
+    /**
+     * The least number of connections needed to get from the stop to every other stop, -1 where there is no way.
+     * A breadth first search over the outgoing rows.
+     */
+    public int[] hopsFrom(int source) {
+        int[] hops = new int[stops.length];
+        Arrays.fill(hops, -1);
+        int[] queue = new int[stops.length];
+        int head = 0;
+        int tail = 0;
+        hops[source] = 0;
+        queue[tail++] = source;
+        while(head < tail) {
+            int s = queue[head++];
+            for(int i = outStart[s]; i < outStart[s + 1]; i++) {
+                int t = outTarget[i];
+                if(hops[t] < 0) {
+                    hops[t] = hops[s] + 1;
+                    queue[tail++] = t;
+                }
+            }
+        }
+        return hops;
+    }
+
+
+    /**
+     * Contains all the outgoing edges of the stop, read from its row.
+     * Throws IllegalArgumentException for a stop that is not one of this graph's.
+     */
+    public Set<Connection> getOutgoingEdges(Stop stop) {
+        int s = rowOf(stop);
+        return edgeSet(outEdge, outStart[s], outStart[s + 1]);
+    }
+
+
+    /**
+     * Contains all the ingoing edges of the stop, read from its row.
+     * Throws IllegalArgumentException for a stop that is not one of this graph's.
+     */
+    public Set<Connection> getIngoingEdges(Stop stop) {
+        int s = rowOf(stop);
+        return edgeSet(inEdge, inStart[s], inStart[s + 1]);
+    }
+
+
+    /**
+     * Returns all the ingoing and outgoing edges of the stop.
+     */
+    public Set<Connection> getAllEdgesOfStop(Stop stop) {
+        Set<Connection> allStopEdges = new HashSet<Connection>(getIngoingEdges(stop));
+        allStopEdges.addAll(getOutgoingEdges(stop));
+        return Collections.unmodifiableSet(allStopEdges);
+    }
+
+
+    private int rowOf(Stop stop) {
+        int s = stop.getIndex();
+        if(s < 0 || s >= stops.length || stops[s] != stop) {
+            throw new IllegalArgumentException("Stop " + stop.getStopId() + " is not in this graph");
+        }
+        return s;
+    }
+
+
+    /**
+     * A read only set of the connections edge[begin] up to edge[end], which are distinct so nothing is copied.
+     */
+    private Set<Connection> edgeSet(int[] edge, int begin, int end) {
+        return new AbstractSet<Connection>() {
+            public Iterator<Connection> iterator() {
+                return new Iterator<Connection>() {
+                    private int next = begin;
+
+                    public boolean hasNext() {
+                        return next < end;
+                    }
+
+                    public Connection next() {
+                        if(next >= end) {
+                            throw new NoSuchElementException();
+                        }
+                        return connections[edge[next++]];
+                    }
+                };
+            }
+
+            public int size() {
+                return end - begin;
+            }
+        };
+    }
+}
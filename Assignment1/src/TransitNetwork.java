@@ -0,0 +1,405 @@
+import java.util.*;
+
+/**
+ * One published version of the network, with every index built over it.
+ * The first snapshot is made from the loader's collections by freeze, which copies the stops, trips, patterns and
+ * connections into objects of its own, so later updates to the loader never touch a snapshot that is in use.
+ * After the loader has applied an update, update makes the next snapshot from the last one, copying only what the
+ * update reached and sharing everything else with it (see FeedLoader.takeChanges).
+ * Stops carry no edges, getGraph is the adjacency of a snapshot (see TransitGraph.getOutgoingEdges).
+ * Nothing in a snapshot changes once it has been made: the setters of Stop, Connection, RoutePattern and Trip are
+ * package private, for the loader and the copies made here, and selection is kept by the caller, not in the stops
+ * and connections. So any number of threads can query the same snapshot without locking.
+ * A new version is published by swapping the reference to it (see JourneyPlanner), readers keep using the
+ * version they picked up until they are done.
+ */
+public final class TransitNetwork {
+
+    //kept in chunks and overlays so an update copies about as much as it changes
+    private final ChunkedList<Stop> stops;
+    private final ChunkedList<Trip> trips;
+    private final ChunkedList<RoutePattern> patterns;
+    private final ChunkedList<Connection> connections;
+    private final IdMap<Stop> stopsById;
+    private final IdMap<Trip> tripsById;
+
+    private final Trie stopsName;
+    private final StopNameIndex stopsInfix;
+    private final StopKdTree stopsLocation;
+    private final TransitGraph graph;
+    private final NetworkIndex index;
+    private final WalkingTransfers transfers;
+    private final JourneyRouter router;
+    private final NetworkRenderer renderer;
+    //search results are listed by the number of trips through the stop, then by name
+    private final Comparator<Stop> byTripsServed;
+    private final int topK;
+    private final long buildTime;
+
+
+
+    /**
+     * Copies the loader's current network and builds the indexes over the copy.
+     * The loader must not be changed while this runs. topK is the number of stops kept at each trie node for prefix searches.
+     */
+    public static TransitNetwork freeze(FeedLoader feed, double walkingRadius, int topK) {
+        return new TransitNetwork(feed, walkingRadius, topK);
+    }
+
+
+    /**
+     * The next version of previous, which must be the last snapshot made from the loader, with the changes applied
+     * to the loader since it was made. The loader must not be changed while this runs.
+     */
+    public static TransitNetwork update(TransitNetwork previous, FeedLoader feed) {
+        return new TransitNetwork(previous, feed, feed.takeChanges());
+    }
+
+
+    private TransitNetwork(FeedLoader feed, double walkingRadius, int topK) {
+        long start = System.nanoTime();
+        feed.takeChanges();     //all of it is copied
+        this.topK = topK;
+        //copies are made in dense order, so the index of an original is the position of its copy
+        Stop[] stopCopies = new Stop[feed.getStops().size()];
+        for(Stop stop : feed.getStops()) {
+            stopCopies[stop.getIndex()] = copyOf(stop);
+        }
+        stops = new ChunkedList<Stop>(stopCopies);
+        Connection[] connectionCopies = new Connection[feed.getConnections().size()];
+        for(Connection conn : feed.getConnections()) {
+            connectionCopies[conn.getIndex()] = copyOf(conn, stops);
+        }
+        connections = new ChunkedList<Connection>(connectionCopies);
+        RoutePattern[] patternCopies = new RoutePattern[feed.getPatterns().size()];
+        Trip[] tripCopies = new Trip[feed.getTrips().size()];
+        for(RoutePattern pattern : feed.getPatterns()) {
+            RoutePattern copy = copyOf(pattern, stops, connections);
+            patternCopies[pattern.getIndex()] = copy;
+            for(Trip trip : copy.getTrips()) {
+                tripCopies[trip.getIndex()] = trip;
+            }
+        }
+        patterns = new ChunkedList<RoutePattern>(patternCopies);
+        trips = new ChunkedList<Trip>(tripCopies);
+        stopsById = new IdMap<Stop>(stops, Stop::getStopId);
+        tripsById = new IdMap<Trip>(trips, Trip::getTripId);
+
+        graph = new TransitGraph(stops, connections);
+        index = new NetworkIndex(stops, trips, patterns);
+        byTripsServed = rankingBy(index);
+        //the loader's names can be in either kind of StopNames, a snapshot's are in a Trie to be ranked
+        stopsName = new Trie();
+        List<Stop> named = feed.getStopsName().getAll(new char[0]);
+        for(Stop stop : named == null ? Collections.<Stop>emptyList() : named) {
+            stopsName.add(stop.getName().toCharArray(), stopCopies[stop.getIndex()]);
+        }
+        stopsName.rankStops(topK, byTripsServed);
+        stopsInfix = new StopNameIndex(stops);
+        stopsLocation = new StopKdTree(stops);
+        transfers = new WalkingTransfers(stops, stopsLocation, walkingRadius);
+        router = new JourneyRouter(stops, trips, patterns, transfers);
+        renderer = new NetworkRenderer(stopsLocation, graph);
+        buildTime = System.nanoTime() - start;
+    }
+
+
+    /**
+     * Makes the next version of previous from the loader's changes. A new copy is made of everything changed and
+     * of everything holding a copy that is replaced: the connections and patterns through a changed stop, the
+     * patterns along a changed connection and all the trips of a changed pattern. Every other copy is previous's.
+     * A list, map or index none of whose inputs has a new copy is previous's own. The lists only copy the chunks
+     * holding a new copy (see ChunkedList) and the id maps only record the changed ids (see IdMap). The indexes
+     * are copied and patched: each only works out the rows whose copy changed and the rows next to them, see the
+     * updating constructor of each, and the trie copies only the paths of the names whose stop or ranking changed.
+     */
+    private TransitNetwork(TransitNetwork previous, FeedLoader feed, FeedLoader.Changes changes) {
+        long start = System.nanoTime();
+        topK = previous.topK;
+        Set<Connection> copyConnections = new HashSet<Connection>(changes.connections);
+        Set<RoutePattern> copyPatterns = new HashSet<RoutePattern>(changes.patterns);
+        for(Stop stop : changes.stops) {
+            copyConnections.addAll(feed.connectionsOf(stop));
+            copyPatterns.addAll(feed.patternsThrough(stop));
+        }
+        for(Connection conn : copyConnections) {
+            copyPatterns.addAll(feed.patternsThrough(conn));
+        }
+        for(Trip trip : changes.trips) {
+            copyPatterns.add(trip.getPattern());
+        }
+
+        Map<Integer, Stop> stopCopies = new HashMap<Integer, Stop>();
+        BitSet changedStops = removedIndexes(previous.stops.size(), feed.getStops().size());
+        for(Stop stop : changes.stops) {
+            stopCopies.put(stop.getIndex(), copyOf(stop));
+            changedStops.set(stop.getIndex());
+        }
+        boolean sameStops = changedStops.isEmpty();
+        stops = sameStops ? previous.stops : new ChunkedList<Stop>(previous.stops, feed.getStops().size(), changedStops, stopCopies::get);
+        Map<Integer, Connection> connectionCopies = new HashMap<Integer, Connection>();
+        BitSet changedConnections = removedIndexes(previous.connections.size(), feed.getConnections().size());
+        for(Connection conn : copyConnections) {
+            connectionCopies.put(conn.getIndex(), copyOf(conn, stops));
+            changedConnections.set(conn.getIndex());
+        }
+        connections = changedConnections.isEmpty() ? previous.connections
+                : new ChunkedList<Connection>(previous.connections, feed.getConnections().size(), changedConnections, connectionCopies::get);
+        Map<Integer, RoutePattern> patternCopies = new HashMap<Integer, RoutePattern>();
+        Map<Integer, Trip> tripCopies = new HashMap<Integer, Trip>();
+        BitSet changedPatterns = removedIndexes(previous.patterns.size(), feed.getPatterns().size());
+        BitSet changedTrips = removedIndexes(previous.trips.size(), feed.getTrips().size());
+        for(RoutePattern pattern : copyPatterns) {
+            RoutePattern copy = copyOf(pattern, stops, connections);
+            patternCopies.put(pattern.getIndex(), copy);
+            changedPatterns.set(pattern.getIndex());
+            for(Trip trip : copy.getTrips()) {
+                tripCopies.put(trip.getIndex(), trip);
+                changedTrips.set(trip.getIndex());
+            }
+        }
+        boolean sameTrips = changedTrips.isEmpty();
+        patterns = changedPatterns.isEmpty() ? previous.patterns
+                : new ChunkedList<RoutePattern>(previous.patterns, feed.getPatterns().size(), changedPatterns, patternCopies::get);
+        trips = sameTrips ? previous.trips : new ChunkedList<Trip>(previous.trips, feed.getTrips().size(), changedTrips, tripCopies::get);
+        stopsById = sameStops ? previous.stopsById : new IdMap<Stop>(previous.stopsById, previous.stops, stops, changedStops, Stop::getStopId);
+        tripsById = sameTrips ? previous.tripsById : new IdMap<Trip>(previous.tripsById, previous.trips, trips, changedTrips, Trip::getTripId);
+
+        List<Stop> removedStops = new ArrayList<Stop>();
+        List<Stop> addedStops = new ArrayList<Stop>();
+        for(int s = changedStops.nextSetBit(0); s >= 0; s = changedStops.nextSetBit(s + 1)) {
+            if(s < previous.stops.size()) {
+                removedStops.add(previous.stops.get(s));
+            }
+            if(s < stops.size()) {
+                addedStops.add(stops.get(s));
+            }
+        }
+        graph = sameStops && changedConnections.isEmpty() ? previous.graph
+                : new TransitGraph(previous.graph, stops, connections, changedStops, changedConnections);
+        index = sameStops && sameTrips ? previous.index : new NetworkIndex(previous.index, stops, trips, changedStops, changedTrips);
+        byTripsServed = index == previous.index ? previous.byTripsServed : rankingBy(index);
+        stopsName = index == previous.index ? previous.stopsName : updatedTrie(previous, feed, removedStops, addedStops, changedPatterns);
+        stopsInfix = sameStops ? previous.stopsInfix : new StopNameIndex(previous.stopsInfix, stops, removedStops, addedStops);
+        stopsLocation = sameStops ? previous.stopsLocation : new StopKdTree(previous.stopsLocation, stops, removedStops, addedStops);
+        transfers = sameStops ? previous.transfers : new WalkingTransfers(previous.transfers, stops, stopsLocation, changedStops);
+        router = sameStops && changedPatterns.isEmpty() ? previous.router
+                : new JourneyRouter(previous.router, stops, trips, patterns, transfers, changedStops, changedPatterns);
+        renderer = graph == previous.graph ? previous.renderer : new NetworkRenderer(previous.renderer, stopsLocation, graph, changedConnections);
+        buildTime = System.nanoTime() - start;
+    }
+
+
+    /**
+     * The trie of the new version, derived from previous's so only the changed paths are copied.
+     * Each name of a removed or added stop copy is given the copy of the stop the loader's trie now has under it,
+     * or taken out if there is none. The names of the other stops on the old and new versions of the changed
+     * patterns are reranked if the number of trips through the stop has changed.
+     */
+    private Trie updatedTrie(TransitNetwork previous, FeedLoader feed, List<Stop> removedStops, List<Stop> addedStops, BitSet changedPatterns) {
+        Trie names = previous.stopsName.derive(byTripsServed);
+        Set<String> replaced = new HashSet<String>();
+        for(Stop stop : removedStops) {
+            replaced.add(stop.getName());
+        }
+        for(Stop stop : addedStops) {
+            replaced.add(stop.getName());
+        }
+        for(String name : replaced) {
+            Stop holder = feed.getStopsName().get(name.toCharArray());
+            if(holder != null) {
+                names.add(name.toCharArray(), stops.get(holder.getIndex()));
+            } else {
+                names.remove(name.toCharArray(), names.get(name.toCharArray()));
+            }
+        }
+
+        Set<Stop> through = new HashSet<Stop>();
+        for(int p = changedPatterns.nextSetBit(0); p >= 0; p = changedPatterns.nextSetBit(p + 1)) {
+            if(p < previous.patterns.size()) {
+                through.addAll(previous.patterns.get(p).getStops());
+            }
+            if(p < patterns.size()) {
+                through.addAll(patterns.get(p).getStops());
+            }
+        }
+        Set<String> reranked = new HashSet<String>();
+        for(Stop stop : through) {
+            //a stop still in its slot is the same copy in both versions, any other has a replaced name
+            int s = stop.getIndex();
+            if(s < stops.size() && stops.get(s) == stop && !replaced.contains(stop.getName())
+                    && previous.index.tripsServed(stop) != index.tripsServed(stop) && reranked.add(stop.getName())) {
+                names.rerank(stop.getName().toCharArray());
+            }
+        }
+        return names;
+    }
+
+
+    /**
+     * The indexes from count up to previousCount, which the last objects had before the lists got shorter.
+     */
+    private static BitSet removedIndexes(int previousCount, int count) {
+        BitSet removed = new BitSet();
+        if(previousCount > count) {
+            removed.set(count, previousCount);
+        }
+        return removed;
+    }
+
+
+    private static Stop copyOf(Stop stop) {
+        Stop copy = new Stop(stop.getStopId(), stop.getName(), stop.getStopLocation());
+        copy.setIndex(stop.getIndex());
+        return copy;
+    }
+
+
+    private static Connection copyOf(Connection conn, List<Stop> stopCopies) {
+        List<String> tripIds = conn.getTripIds();
+        Connection copy = new Connection(tripIds.get(0), stopCopies.get(conn.getFromStop().getIndex()), stopCopies.get(conn.getToStop().getIndex()));
+        for(int i = 1; i < tripIds.size(); i++) {
+            copy.addTrip(tripIds.get(i));
+        }
+        copy.setIndex(conn.getIndex());
+        return copy;
+    }
+
+
+    /**
+     * Copies the pattern over the given stop and connection copies, along with its trips.
+     */
+    private static RoutePattern copyOf(RoutePattern pattern, List<Stop> stopCopies, List<Connection> connectionCopies) {
+        Stop[] patternStops = new Stop[pattern.size()];
+        for(int i = 0; i < patternStops.length; i++) {
+            patternStops[i] = stopCopies.get(pattern.getStop(i).getIndex());
+        }
+        RoutePattern copy = new RoutePattern(patternStops);
+        for(int i = 0; i + 1 < patternStops.length; i++) {
+            copy.setConnection(i, connectionCopies.get(pattern.getConnections().get(i).getIndex()));
+        }
+        copy.setIndex(pattern.getIndex());
+        for(Trip trip : pattern.getTrips()) {
+            Trip tripCopy = new Trip(trip.getTripId(), copy);
+            tripCopy.setIndex(trip.getIndex());
+            copy.addTrip(tripCopy);
+        }
+        return copy;
+    }
+
+
+    private static Comparator<Stop> rankingBy(NetworkIndex index) {
+        return (Stop stop1, Stop stop2) -> {
+            int byTrips = Integer.compare(index.tripsServed(stop2), index.tripsServed(stop1));
+            return byTrips != 0 ? byTrips : stop1.getName().compareTo(stop2.getName());
+        };
+    }
+
+
+    /**
+     * The stops in dense order.
+     */
+    public List<Stop> getStops() {
+        return stops;
+    }
+
+
+    public List<Trip> getTrips() {
+        return trips;
+    }
+
+
+    public List<Connection> getConnections() {
+        return connections;
+    }
+
+
+    public Stop getStop(String stopId) {
+        return stopsById.get(stopId);
+    }
+
+
+    public Trip getTrip(String tripId) {
+        return tripsById.get(tripId);
+    }
+
+
+    /**
+     * The stop with exactly this name, or null.
+     */
+    public Stop findByName(String name) {
+        return stopsName.get(name.toCharArray());
+    }
+
+
+    /**
+     * The best ranked stops whose name starts with the prefix, or null if no name does.
+     */
+    public List<Stop> topWithPrefix(String prefix) {
+        return stopsName.getTop(prefix.toCharArray());
+    }
+
+
+    public int countWithPrefix(String prefix) {
+        return stopsName.countAll(prefix.toCharArray());
+    }
+
+
+    /**
+     * Stops whose name starts with something within maxEdits typos of the prefix, see Trie.getAllWithin.
+     */
+    public List<Stop> withinTypos(String prefix, int maxEdits) {
+        return stopsName.getAllWithin(prefix.toCharArray(), maxEdits);
+    }
+
+
+    /**
+     * Stops with the text anywhere in their name, ignoring case.
+     */
+    public List<Stop> findContaining(String text) {
+        return stopsInfix.find(text);
+    }
+
+
+    public Stop nearest(Location location) {
+        return stopsLocation.nearest(location);
+    }
+
+
+    public Comparator<Stop> byTripsServed() {
+        return byTripsServed;
+    }
+
+
+    public NetworkIndex getIndex() {
+        return index;
+    }
+
+
+    public TransitGraph getGraph() {
+        return graph;
+    }
+
+
+    public WalkingTransfers getTransfers() {
+        return transfers;
+    }
+
+
+    public JourneyRouter getRouter() {
+        return router;
+    }
+
+
+    public NetworkRenderer getRenderer() {
+        return renderer;
+    }
+
+
+    /**
+     * Nanoseconds taken to copy the network and build the indexes, or to bring them up to date for an update.
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+}
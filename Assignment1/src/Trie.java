@@ -1,9 +1,14 @@
 import java.util.*;
 
-public class Trie {
+public class Trie implements StopNames {
 
     private TrieNode root;
-    private TrieNode curNode;
+
+    //ranking used for the top stops kept at each node, null until rankStops is called
+    private Comparator<Stop> rank;
+    private int topK;
+    //the nodes this trie has made or copied since derive, null if it shares no nodes with another trie
+    private Set<TrieNode> owned;
 
     public Trie() {
         root = new TrieNode();
@@ -14,16 +19,140 @@ public class Trie {
      * Through each node character it traverses down till no more characters in the word
      * then the stop is set to that node.
      * If it doesn't exist, a node will be created.
+     * Once the stops have been ranked, the top stops of each node on the word's path are updated too.
+     * Returns the stop that was there before, if any.
      */
-    public void add(char[] word, Stop stop) {
-        curNode = root;
-        for(char ch : word) {
-            if(!curNode.getChildren().containsKey(ch)) {
-                curNode.addChild(ch, new TrieNode());
-            }
-            curNode = curNode.getChildren().get(ch);
+    @Override
+    public Stop add(char[] word, Stop stop) {
+        TrieNode[] path = new TrieNode[word.length + 1];
+        TrieNode curNode = ownRoot();
+        path[0] = curNode;
+        for(int i = 0; i < word.length; i++) {
+            curNode = ownChild(curNode, word[i], true);
+            path[i + 1] = curNode;
         }
+        Stop replaced = curNode.getStop();
         curNode.setStop(stop);
+        rankPath(path);
+        return replaced;
+    }
+
+
+    /**
+     * Takes the stop off the word's node (if it is the stop stored there) and drops the nodes left with
+     * nothing in or below them. Once the stops have been ranked, the top stops on the word's path are updated.
+     */
+    @Override
+    public void remove(char[] word, Stop stop) {
+        TrieNode[] path = pathTo(word);
+        if(path == null || path[word.length].getStop() != stop) {
+            return;
+        }
+        path = ownPath(word);
+        path[word.length].setStop(null);
+        int end = word.length;
+        while(end > 0 && path[end].getStop() == null && path[end].getChildren().isEmpty()) {
+            path[end - 1].removeChild(word[end - 1]);
+            end--;
+        }
+        rankPath(Arrays.copyOf(path, end + 1));
+    }
+
+
+    /**
+     * Updates the top stops on the word's path, for when the ranking of the stop with that name has changed.
+     */
+    public void rerank(char[] word) {
+        if(rank != null && pathTo(word) != null) {
+            rankPath(ownPath(word));
+        }
+    }
+
+
+    /**
+     * A trie with the same words and stops as this one, ranked by the given ranking, that starts out sharing every
+     * node with this one. Changes to it copy the nodes on the changed paths first, so they never reach this trie,
+     * but this trie must not be changed afterwards as the new one would see it. The ranking must order the stops as
+     * this trie's did, other than those whose paths are then reranked (see rerank).
+     */
+    public Trie derive(Comparator<Stop> ranking) {
+        Trie next = new Trie();
+        next.root = root;
+        next.rank = ranking;
+        next.topK = topK;
+        next.owned = Collections.newSetFromMap(new IdentityHashMap<TrieNode, Boolean>());
+        return next;
+    }
+
+
+    private TrieNode ownRoot() {
+        if(owned != null && !owned.contains(root)) {
+            root = new TrieNode(root);
+            owned.add(root);
+        }
+        return root;
+    }
+
+
+    /**
+     * The node's child for the character, copied first if it is shared with another trie, or made if there is
+     * none and create is set (null if not). The node must be one this trie can change.
+     */
+    private TrieNode ownChild(TrieNode node, char ch, boolean create) {
+        TrieNode child = node.getChildren().get(ch);
+        if(child == null && !create) {
+            return null;
+        }
+        if(child != null && (owned == null || owned.contains(child))) {
+            return child;
+        }
+        TrieNode copy = child == null ? new TrieNode() : new TrieNode(child);
+        if(owned != null) {
+            owned.add(copy);
+        }
+        node.addChild(ch, copy);
+        return copy;
+    }
+
+
+    /**
+     * The nodes from the root down to the word's node, which must be in the trie, each one this trie can change.
+     */
+    private TrieNode[] ownPath(char[] word) {
+        TrieNode[] path = new TrieNode[word.length + 1];
+        path[0] = ownRoot();
+        for(int i = 0; i < word.length; i++) {
+            path[i + 1] = ownChild(path[i], word[i], false);
+        }
+        return path;
+    }
+
+
+    /**
+     * The nodes from the root down to the word's node, or null if the word isn't in the trie.
+     */
+    private TrieNode[] pathTo(char[] word) {
+        TrieNode[] path = new TrieNode[word.length + 1];
+        path[0] = root;
+        for(int i = 0; i < word.length; i++) {
+            path[i + 1] = path[i].getChildren().get(word[i]);
+            if(path[i + 1] == null) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+
+    /**
+     * Reranks the nodes of a path bottom up, each from its children, if the stops have been ranked.
+     */
+    private void rankPath(TrieNode[] path) {
+        if(rank != null) {
+            for(int i = path.length - 1; i >= 0; i--) {
+                rankNode(path[i]);
+            }
+        }
     }
 
 
@@ -31,8 +160,9 @@ public class Trie {
      * Searches down the trie from the root. Moves to each child node related to each character.
      * If a child isn't found, null is returned.
      */
+    @Override
     public Stop get(char[] word){
-        curNode = root;
+        TrieNode curNode = root;
         for(char ch : word) {
             if(!curNode.getChildren().containsKey(ch)) {
                 return null;
@@ -47,10 +177,12 @@ public class Trie {
      * Helper method for calling 'getAllFrom'. Traverses down till it reaches the end of the prefix char
      * and returns null.
      * If it reaches the prefix char, 'getAllFrom' is called on the node with the array.
+     * Only an empty trie has a node with no stop below it, so for it null is returned too.
      */
+    @Override
     public List<Stop> getAll(char[] prefix){
         List<Stop> results = new ArrayList<Stop>();
-        curNode = root;
+        TrieNode curNode = root;
         for(char c : prefix) {
             if(!curNode.getChildren().containsKey(c)) {
                 return null;
@@ -58,7 +190,147 @@ public class Trie {
             curNode = curNode.getChildren().get(c);
         }
         allFrom(curNode, results);
-        return results;
+        return results.isEmpty() ? null : results;
+    }
+
+
+    /**
+     * The k best ranked stops whose name starts with the prefix, best first, or null if no name does.
+     * Only reads the list kept at the prefix's node, so it costs the length of the prefix plus k.
+     * rankStops must have been called first. The list is read-only, as it is a view of the node's own ranking.
+     */
+    public List<Stop> getTop(char[] prefix) {
+        TrieNode node = nodeFor(prefix);
+        if(node == null) {
+            return null;
+        }
+        return Collections.unmodifiableList(Arrays.asList(node.getTopStops()));
+    }
+
+
+    /**
+     * How many stops have a name starting with the prefix. rankStops must have been called first.
+     */
+    public int countAll(char[] prefix) {
+        TrieNode node = nodeFor(prefix);
+        return node == null ? 0 : node.getSubtreeCount();
+    }
+
+
+    /**
+     * Works out the k best stops under every node using the given ranking (best first), so that getTop
+     * does not need to visit the subtree. Later adds keep the lists up to date.
+     */
+    public void rankStops(int k, Comparator<Stop> ranking) {
+        rank = ranking;
+        topK = k;
+        rankFrom(ownRoot());
+    }
+
+
+    private void rankFrom(TrieNode node) {
+        for(char ch : new ArrayList<Character>(node.getChildren().keySet())) {
+            rankFrom(ownChild(node, ch, false));
+        }
+        rankNode(node);
+    }
+
+
+    /**
+     * Merges the node's own stop with the top stops of its children, which must already be ranked.
+     */
+    private void rankNode(TrieNode node) {
+        List<Stop> candidates = new ArrayList<Stop>();
+        int count = 0;
+        if(node.getStop() != null) {
+            candidates.add(node.getStop());
+            count++;
+        }
+        for(TrieNode n : node.getChildren().values()) {
+            Collections.addAll(candidates, n.getTopStops());
+            count += n.getSubtreeCount();
+        }
+        candidates.sort(rank);
+        node.setTopStops(candidates.subList(0, Math.min(topK, candidates.size())).toArray(new Stop[0]));
+        node.setSubtreeCount(count);
+    }
+
+
+    /**
+     * Stops whose name starts with something within maxEdits edits (insert, delete or change a character,
+     * ignoring case) of the prefix, closest first and then by rank, at most k of them.
+     * Walks the trie carrying one row of the Levenshtein table per node, which is the state of a Levenshtein
+     * automaton for the prefix. A branch is dropped as soon as every entry in its row is over maxEdits, as
+     * nothing below it can get closer. Where the whole prefix is matched the node's top stops are taken.
+     * rankStops must have been called first.
+     */
+    public List<Stop> getAllWithin(char[] prefix, int maxEdits) {
+        Map<Stop, Integer> edits = new HashMap<Stop, Integer>();
+        int[] row = new int[prefix.length + 1];
+        for(int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        if(row[prefix.length] <= maxEdits) {
+            addTopStops(root, row[prefix.length], edits);
+        }
+        for(Map.Entry<Character, TrieNode> child : root.getChildren().entrySet()) {
+            withinFrom(child.getValue(), child.getKey(), prefix, row, maxEdits, edits);
+        }
+
+        List<Stop> results = new ArrayList<Stop>(edits.keySet());
+        results.sort((Stop stop1, Stop stop2) -> {
+            int byEdits = Integer.compare(edits.get(stop1), edits.get(stop2));
+            return byEdits != 0 ? byEdits : rank.compare(stop1, stop2);
+        });
+        return new ArrayList<Stop>(results.subList(0, Math.min(topK, results.size())));
+    }
+
+
+    /**
+     * Works out the node's row of the table from its parent's row, then recurses into the children while
+     * some entry is still within maxEdits.
+     */
+    private void withinFrom(TrieNode node, char ch, char[] prefix, int[] prevRow, int maxEdits, Map<Stop, Integer> edits) {
+        int[] row = new int[prevRow.length];
+        row[0] = prevRow[0] + 1;
+        int rowMin = row[0];
+        char lower = Character.toLowerCase(ch);
+        for(int i = 1; i < row.length; i++) {
+            int change = Character.toLowerCase(prefix[i - 1]) == lower ? 0 : 1;
+            row[i] = Math.min(Math.min(row[i - 1] + 1, prevRow[i] + 1), prevRow[i - 1] + change);
+            rowMin = Math.min(rowMin, row[i]);
+        }
+        if(rowMin > maxEdits) {
+            return;
+        }
+        if(row[prefix.length] <= maxEdits) {
+            addTopStops(node, row[prefix.length], edits);
+        }
+        for(Map.Entry<Character, TrieNode> child : node.getChildren().entrySet()) {
+            withinFrom(child.getValue(), child.getKey(), prefix, row, maxEdits, edits);
+        }
+    }
+
+
+    private void addTopStops(TrieNode node, int distance, Map<Stop, Integer> edits) {
+        for(Stop stop : node.getTopStops()) {
+            Integer known = edits.get(stop);
+            if(known == null || distance < known) {
+                edits.put(stop, distance);
+            }
+        }
+    }
+
+
+    private TrieNode nodeFor(char[] prefix) {
+        TrieNode node = root;
+        for(char c : prefix) {
+            node = node.getChildren().get(c);
+            if(node == null) {
+                return null;
+            }
+        }
+        return node;
     }
 
 
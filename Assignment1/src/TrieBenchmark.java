@@ -0,0 +1,260 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Repeatable numbers for the stop name tries: building one, exact lookup (get) and prefix enumeration (getAll).
+ * Every implementation in SUBJECTS is run on the same datasets: the real stop names from a stops file,
+ * and synthetic names made from the words of the real ones, scaled up to each requested size.
+ *
+ * Usage: java TrieBenchmark stops.txt [synthetic sizes...]   (default sizes 10000 100000)
+ *
+ * Each benchmark runs WARMUP_ITERATIONS untimed iterations, then MEASURED_ITERATIONS timed ones of about
+ * ITERATION_NANOS each, and reports the average time per operation (with the fastest iteration) and the bytes
+ * allocated per operation, read from the thread's allocation counter. Results are folded into sink so that
+ * the JIT cannot drop the work. Run it with a fixed heap (e.g. -Xms1g -Xmx1g) so GC sizing doesn't vary between runs.
+ * For a build, one operation is adding every name of the dataset to an empty trie.
+ * Lookups are of the names in shuffled order, one in ten changed so that it misses.
+ * Prefixes are the first 2 to 4 characters of random names.
+ */
+public class TrieBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 300_000_000L;
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000};
+    private static final int QUERY_COUNT = 10_000;
+    private static final long SEED = 261;
+
+    //the implementations compared, to compare a new one add it here
+    private static final List<Subject> SUBJECTS = Arrays.asList(new Subject("Trie", Trie::new), new Subject("CompactTrie", CompactTrie::new));
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static long sink;
+
+
+
+    public static void main(String[] args) {
+        if(args.length < 1) {
+            System.err.println("Usage: java TrieBenchmark stops.txt [synthetic sizes...]");
+            return;
+        }
+        List<Stop> realStops;
+        try {
+            realStops = readStops(new File(args[0]));
+        } catch (IOException e) {
+            System.err.println("Error reading the stops file: " + e);
+            return;
+        }
+        int[] sizes = DEFAULT_SIZES;
+        if(args.length > 1) {
+            sizes = new int[args.length - 1];
+            for(int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        List<Dataset> datasets = new ArrayList<Dataset>();
+        datasets.add(new Dataset("real", realStops));
+        for(int size : sizes) {
+            datasets.add(new Dataset("synthetic", synthetic(realStops, size)));
+        }
+
+        System.out.printf("%-10s %8s %-12s %-7s %14s %14s %12s%n", "dataset", "names", "trie", "op", "ns/op", "best ns/op", "bytes/op");
+        for(Dataset data : datasets) {
+            for(Subject subject : SUBJECTS) {
+                StopNames built = subject.build(data.names, data.stops);
+                report(data, subject, "add", measure(1, (int i) -> subject.build(data.names, data.stops).get(data.names[0]) == null ? 0 : 1, 1),
+                        data.stops.size());
+                report(data, subject, "get", measure(data.lookups.length, (int i) -> built.get(data.lookups[i]) == null ? 0 : 1, 256), 1);
+                report(data, subject, "getAll", measure(data.prefixes.length, (int i) -> {
+                    List<Stop> found = built.getAll(data.prefixes[i]);
+                    return found == null ? 0 : found.size();
+                }, 16), 1);
+            }
+        }
+        System.out.println("checksum " + sink);
+    }
+
+
+    /**
+     * Prints one benchmark. perOperation divides the numbers down, so a build is shown per name added.
+     */
+    private static void report(Dataset data, Subject subject, String op, double[] result, int perOperation) {
+        String bytes = result[2] < 0 ? "n/a" : String.format("%.1f", result[2] / perOperation);
+        System.out.printf("%-10s %8d %-12s %-7s %14.1f %14.1f %12s%n", data.name, data.stops.size(), subject.name(), op,
+                result[0] / perOperation, result[1] / perOperation, bytes);
+    }
+
+
+    /**
+     * Runs the operation over inputs 0 to count - 1 and round again, reading the clock every batch operations.
+     * Returns the average ns per operation over the measured iterations, the best iteration's,
+     * and the bytes allocated per operation (negative if the JVM can't count them).
+     */
+    private static double[] measure(int count, Operation op, int batch) {
+        for(int w = 0; w < WARMUP_ITERATIONS; w++) {
+            iterate(count, op, batch);
+        }
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        double best = Double.MAX_VALUE;
+        for(int m = 0; m < MEASURED_ITERATIONS; m++) {
+            long[] iteration = iterate(count, op, batch);
+            ops += iteration[0];
+            nanos += iteration[1];
+            bytes = iteration[2] < 0 || bytes < 0 ? -1 : bytes + iteration[2];
+            best = Math.min(best, (double) iteration[1] / iteration[0]);
+        }
+        return new double[] {(double) nanos / ops, best, bytes < 0 ? -1 : (double) bytes / ops};
+    }
+
+
+    /**
+     * One iteration: operations, nanoseconds taken and bytes allocated.
+     */
+    private static long[] iterate(int count, Operation op, int batch) {
+        long result = 0;
+        long ops = 0;
+        int i = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for(int b = 0; b < batch; b++) {
+                result += op.run(i);
+                if(++i == count) {
+                    i = 0;
+                }
+            }
+            ops += batch;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < ITERATION_NANOS);
+        long allocatedAfter = allocatedBytes();
+        sink += result;
+        return new long[] {ops, elapsed, allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore};
+    }
+
+
+    /**
+     * Bytes allocated so far by this thread, or -1 if the JVM doesn't count them.
+     */
+    @SuppressWarnings("deprecation")
+    private static long allocatedBytes() {
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+
+    /**
+     * Reads the stop id and name columns of a stops file, locations are not needed here.
+     */
+    private static List<Stop> readStops(File file) throws IOException {
+        List<Stop> stops = new ArrayList<Stop>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();    //header
+            while((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if(fields.length >= 2) {
+                    stops.add(new Stop(fields[0], fields[1], new Location(0, 0)));
+                }
+            }
+        }
+        return stops;
+    }
+
+
+    /**
+     * size distinct names of one to three words taken from the real names, half of them numbered,
+     * so they share prefixes the way real stop names do.
+     */
+    private static List<Stop> synthetic(List<Stop> realStops, int size) {
+        List<String> words = new ArrayList<String>();
+        for(Stop stop : realStops) {
+            words.addAll(Arrays.asList(stop.getName().split(" ")));
+        }
+        Random random = new Random(SEED);
+        Set<String> names = new LinkedHashSet<String>();
+        while(names.size() < size) {
+            StringBuilder name = new StringBuilder(words.get(random.nextInt(words.size())));
+            for(int w = random.nextInt(3); w > 0; w--) {
+                name.append(' ').append(words.get(random.nextInt(words.size())));
+            }
+            if(random.nextBoolean()) {
+                name.append(' ').append(1 + random.nextInt(999));
+            }
+            names.add(name.toString());
+        }
+        List<Stop> stops = new ArrayList<Stop>();
+        for(String name : names) {
+            stops.add(new Stop("S" + stops.size(), name, new Location(0, 0)));
+        }
+        return stops;
+    }
+
+
+    /**
+     * The names of a set of stops, and the lookups and prefixes the benchmarks run over them.
+     */
+    private static class Dataset {
+        final String name;
+        final List<Stop> stops;
+        final char[][] names;
+        final char[][] lookups;
+        final char[][] prefixes;
+
+        Dataset(String name, List<Stop> stops) {
+            this.name = name;
+            this.stops = stops;
+            names = new char[stops.size()][];
+            for(int i = 0; i < names.length; i++) {
+                names[i] = stops.get(i).getName().toCharArray();
+            }
+            Random random = new Random(SEED);
+            lookups = new char[QUERY_COUNT][];
+            prefixes = new char[QUERY_COUNT][];
+            for(int i = 0; i < QUERY_COUNT; i++) {
+                char[] word = names[random.nextInt(names.length)];
+                lookups[i] = random.nextInt(10) == 0 ? (new String(word) + "#").toCharArray() : word;
+                word = names[random.nextInt(names.length)];
+                prefixes[i] = Arrays.copyOf(word, Math.min(word.length, 2 + random.nextInt(3)));
+            }
+        }
+    }
+
+
+    private interface Operation {
+        long run(int i);
+    }
+
+
+    /**
+     * One trie implementation under test. build makes a new one holding the stops, each keyed by the name at the same index.
+     */
+    private static class Subject {
+        private final String name;
+        private final Supplier<StopNames> empty;
+
+        Subject(String name, Supplier<StopNames> empty) {
+            this.name = name;
+            this.empty = empty;
+        }
+
+        String name() {
+            return name;
+        }
+
+        StopNames build(char[][] names, List<Stop> stops) {
+            StopNames built = empty.get();
+            for(int i = 0; i < names.length; i++) {
+                built.add(names[i], stops.get(i));
+            }
+            return built;
+        }
+    }
+}
@@ -3,6 +3,8 @@ import java.util.*;
 public class TrieNode {
     private Stop stop;
     private Map<Character, TrieNode> children;
+    private Stop[] topStops = new Stop[0];   //best ranked stops in this subtree, see Trie.rankStops
+    private int subtreeCount;               //number of stops in this subtree
 
 
     public TrieNode() {
@@ -10,11 +12,27 @@ public class TrieNode {
     }
 
 
+    /**
+     * A node with the same stop, children and ranking as the other, sharing the children but not the map of them.
+     */
+    public TrieNode(TrieNode other) {
+        stop = other.stop;
+        children = new HashMap<Character, TrieNode>(other.children);
+        topStops = other.topStops;
+        subtreeCount = other.subtreeCount;
+    }
+
+
     public void addChild(char c, TrieNode addNode) {
         children.put(c, addNode);
     }
 
 
+    public void removeChild(char c) {
+        children.remove(c);
+    }
+
+
     public void setStop(Stop s) {
         stop = s;
     }
@@ -32,4 +50,24 @@ public class TrieNode {
         return stop;
     }
 
+
+    public Stop[] getTopStops() {
+        return topStops;
+    }
+
+
+    public void setTopStops(Stop[] top) {
+        topStops = top;
+    }
+
+
+    public int getSubtreeCount() {
+        return subtreeCount;
+    }
+
+
+    public void setSubtreeCount(int count) {
+        subtreeCount = count;
+    }
+
 }
\ No newline at end of file
@@ -3,16 +3,13 @@ import java.util.*;
 public class Trip {
 
     private String tripId;
-    private List<Stop> stops = new ArrayList<Stop>();
+    private RoutePattern pattern;   //shared with every other trip through the same stops
+    private int index = -1;     //dense number given at load time, see NetworkIndex
 
 
-    public Trip(String tripId) {
+    public Trip(String tripId, RoutePattern pattern) {
         this.tripId = tripId;
-    }
-
-
-    public void addStop(Stop s){
-        stops.add(s);
+        this.pattern = pattern;
     }
 
 
@@ -20,11 +17,29 @@ public class Trip {
      * The collection contains all the stops on the trip.
      * */
     public List<Stop> getStops(){
-        return Collections.unmodifiableList(stops);
+        return pattern.getStops();
+    }
+
+
+    public RoutePattern getPattern() {
+        return pattern;
     }
 
 
     public String getTripId() {
         return tripId;
     }
+
+
+    /**
+     * The trip's position in load order, used to index the arrays of NetworkIndex.
+     * */
+    public int getIndex() {
+        return index;
+    }
+
+
+    void setIndex(int i) {
+        index = i;
+    }
 }
\ No newline at end of file
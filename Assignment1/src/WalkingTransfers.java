@@ -0,0 +1,142 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * The pairs of stops close enough to walk between, worked out once at load time.
+ * Each stop's neighbours within the radius are found with the k-d tree, one stop per task in parallel,
+ * then packed into a compressed row: the stops reachable on foot from stop s are
+ * target[start[s]] up to start[s + 1], nearest first, with the walking distance (in the same units as
+ * Location, kilometres) in distance[] alongside. Links go both ways, so each pair is stored twice.
+ * Queries only read the arrays and never do a geometric search.
+ */
+public class WalkingTransfers {
+
+    public static final double DEFAULT_RADIUS = 0.25;   //km, roughly three minutes on foot
+
+    private double radius;
+    private int[] start;
+    private int[] target;
+    private float[] distance;
+
+
+
+    /**
+     * The stops must be in index order, as FeedLoader gives them, and the tree built over the same stops.
+     */
+    public WalkingTransfers(List<Stop> stopList, StopKdTree stopTree, double radius) {
+        this.radius = radius;
+        Stop[] stops = stopList.toArray(new Stop[0]);
+        int[][] rowTargets = new int[stops.length][];
+        float[][] rowDistances = new float[stops.length][];
+
+        //each task only writes its own stop's row, so the rows need no locking
+        IntStream.range(0, stops.length).parallel().forEach(s -> findNeighbours(stops, s, stopTree, rowTargets, rowDistances));
+
+        start = new int[stops.length + 1];
+        for(int s = 0; s < stops.length; s++) {
+            start[s + 1] = start[s] + rowTargets[s].length;
+        }
+        target = new int[start[stops.length]];
+        distance = new float[start[stops.length]];
+        for(int s = 0; s < stops.length; s++) {
+            System.arraycopy(rowTargets[s], 0, target, start[s], rowTargets[s].length);
+            System.arraycopy(rowDistances[s], 0, distance, start[s], rowDistances[s].length);
+        }
+    }
+
+
+    /**
+     * The transfers of previous brought up to date with the new stops, where changedStops are the indexes whose
+     * stop is not the one previous was built with (see TransitNetwork.update), and the tree is built over the new stops.
+     * Only the rows of the changed stops and of their neighbours (before and after) are worked out again, every
+     * other row is copied.
+     */
+    public WalkingTransfers(WalkingTransfers previous, List<Stop> stopList, StopKdTree stopTree, BitSet changedStops) {
+        this.radius = previous.radius;
+        Stop[] stops = stopList.toArray(new Stop[0]);
+        int n = stops.length;
+        int previousCount = previous.start.length - 1;
+
+        BitSet rows = (BitSet) changedStops.clone();
+        for(int s = changedStops.nextSetBit(0); s >= 0; s = changedStops.nextSetBit(s + 1)) {
+            if(s < previousCount) {
+                for(int i = previous.start[s]; i < previous.start[s + 1]; i++) {
+                    rows.set(previous.target[i]);
+                }
+            }
+            if(s < n) {
+                stopTree.withinRadius(stops[s].getStopLocation(), radius, (Stop near) -> rows.set(near.getIndex()));
+            }
+        }
+
+        int[][] rowTargets = new int[n][];
+        float[][] rowDistances = new float[n][];
+        for(int s = rows.nextSetBit(0); s >= 0 && s < n; s = rows.nextSetBit(s + 1)) {
+            findNeighbours(stops, s, stopTree, rowTargets, rowDistances);
+        }
+        RowSplice splice = new RowSplice(previous.start, n, rows, (int s) -> rowTargets[s].length);
+        start = splice.getStart();
+        target = new int[start[n]];
+        distance = new float[start[n]];
+        splice.copyKept(previous.target, target);
+        splice.copyKept(previous.distance, distance);
+        for(int s : splice.getReplaced()) {
+            System.arraycopy(rowTargets[s], 0, target, start[s], rowTargets[s].length);
+            System.arraycopy(rowDistances[s], 0, distance, start[s], rowDistances[s].length);
+        }
+    }
+
+
+    /**
+     * Fills in the row of stop s: the other stops within the radius, nearest first, and how far they are.
+     */
+    private void findNeighbours(Stop[] stops, int s, StopKdTree stopTree, int[][] rowTargets, float[][] rowDistances) {
+        Location here = stops[s].getStopLocation();
+        List<Stop> near = new ArrayList<Stop>();
+        stopTree.withinRadius(here, radius, near::add);
+        near.remove(stops[s]);
+        near.sort(Comparator.comparingDouble((Stop other) -> here.distance(other.getStopLocation())));
+        rowTargets[s] = new int[near.size()];
+        rowDistances[s] = new float[near.size()];
+        for(int i = 0; i < near.size(); i++) {
+            rowTargets[s][i] = near.get(i).getIndex();
+            rowDistances[s][i] = (float) here.distance(near.get(i).getStopLocation());
+        }
+    }
+
+
+    /**
+     * The stop's links are the positions from begin(stop) up to end(stop).
+     */
+    public int begin(int stop) {
+        return start[stop];
+    }
+
+
+    public int end(int stop) {
+        return start[stop + 1];
+    }
+
+
+    /**
+     * Index of the stop the link leads to.
+     */
+    public int target(int link) {
+        return target[link];
+    }
+
+
+    public float distance(int link) {
+        return distance[link];
+    }
+
+
+    public int linkCount() {
+        return target.length;
+    }
+
+
+    public double getRadius() {
+        return radius;
+    }
+}
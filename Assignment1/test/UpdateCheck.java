@@ -0,0 +1,533 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Checks that bringing a snapshot up to date after an update (TransitNetwork.update) gives the same network as
+ * loading the changed data from scratch. The feed is loaded and frozen, then rounds of random updates (stops added,
+ * renamed, moved and removed, trips added, replaced and removed) are applied to the loader, the snapshot being
+ * updated after each round. The same changes are made to a plain copy of the files' lines. Every CHECK_EVERY rounds,
+ * and after the last, those lines are written out, loaded by a new loader and frozen, and the two snapshots are
+ * compared by id, as their dense indexes differ: the stops, trips and connections, the graph, the trips through
+ * each stop, the walking transfers, searches by prefix, typo, name and infix, nearest stops, the trips needed to
+ * reach every stop from a sample of stops, and the drawing of the network at a few zooms.
+ * Also prints how long the updates took against a full freeze.
+ * The updates are random but seeded, a run over the same files goes through the same updates for each of SEEDS
+ * and exits with status 1 if any check found a mismatch.
+ *
+ * Usage, from Assignment1:  javac -d test-classes src/*.java test/*.java
+ *                           java -cp test-classes UpdateCheck data/stops.txt data/trips.txt [rounds]   (default 200 rounds a seed)
+ */
+public class UpdateCheck {
+
+    private static final long[] SEEDS = {1, 2, 3, 4};
+    private static final int DEFAULT_ROUNDS = 200;
+    private static final int CHECK_EVERY = 50;
+    private static final int MAX_CHANGES = 6;       //per round
+    private static final int SAMPLES = 200;         //searches and nearest stops compared per check
+    private static final int ROUTED_STOPS = 20;
+    private static final int IMAGE_SIZE = 600;
+    private static final int MAX_REPORTED = 10;     //mismatches printed per check
+
+    //the feed as lines of fields, changed alongside the loader
+    private Map<String, String[]> stopLines = new LinkedHashMap<String, String[]>();
+    private Map<String, List<String>> tripLines = new LinkedHashMap<String, List<String>>();
+    private List<String> stopIds = new ArrayList<String>();
+    private List<String> tripIds = new ArrayList<String>();
+    private Map<String, Integer> tripsUsing = new HashMap<String, Integer>();   //stop id -> trips through it
+    private Random random;
+    private int added;
+    private int mismatches;
+    private int reported;
+
+
+
+    public static void main(String[] args) {
+        if(args.length < 2) {
+            System.err.println("Usage: java UpdateCheck stops.txt trips.txt [rounds]");
+            System.exit(2);
+        }
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+        int mismatches = 0;
+        for(long seed : SEEDS) {
+            System.out.println("Seed " + seed);
+            UpdateCheck check = new UpdateCheck(seed);
+            try {
+                check.run(new File(args[0]), new File(args[1]), rounds);
+            } catch (IOException e) {
+                System.err.println("Error reading or writing the stops and trips files: " + e);
+                System.exit(2);
+            }
+            mismatches += check.mismatches;
+        }
+        if(mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+
+    private UpdateCheck(long seed) {
+        random = new Random(seed);
+    }
+
+
+    private void run(File stopFile, File tripFile, int rounds) throws IOException {
+        readLines(stopFile, tripFile);
+        FeedLoader loader = newLoader();
+        loader.load(stopFile, tripFile);
+        TransitNetwork net = TransitNetwork.freeze(loader, WalkingTransfers.DEFAULT_RADIUS, StopQueries.MAX_RESULTS);
+        System.out.printf("%d stops, %d trips, %d connections%n", net.getStops().size(), net.getTrips().size(), net.getConnections().size());
+
+        File dir = Files.createTempDirectory("update-check").toFile();
+        long updateTime = 0;
+        long indexTime = 0;
+        int changes = 0;
+        for(int round = 1; round <= rounds; round++) {
+            FeedUpdate update = randomUpdate();
+            changes += update.size();
+            long start = System.nanoTime();
+            loader.apply(update);
+            net = TransitNetwork.update(net, loader);
+            updateTime += System.nanoTime() - start;
+            indexTime += net.getBuildTime();
+
+            if(round % CHECK_EVERY == 0 || round == rounds) {
+                TransitNetwork fresh = freshLoad(dir);
+                int before = mismatches;
+                compare(net, fresh);
+                System.out.printf("Round %d: %d stops, %d trips, %d mismatches, full freeze %.1fms%n", round,
+                        fresh.getStops().size(), fresh.getTrips().size(), mismatches - before, fresh.getBuildTime() / 1e6);
+            }
+        }
+        for(File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+        System.out.printf("%d updates of %d changes: %.2fms each on average (%.2fms of it the snapshot)%n",
+                rounds, changes, updateTime / 1e6 / rounds, indexTime / 1e6 / rounds);
+        System.out.println(mismatches == 0 ? "Updated network matches a fresh load" : mismatches + " mismatches");
+    }
+
+
+    private static FeedLoader newLoader() {
+        return new FeedLoader(new HashMap<String, Stop>(), new HashMap<String, Trip>(), new HashSet<Connection>(), StopNames.create());
+    }
+
+
+    private void readLines(File stopFile, File tripFile) throws IOException {
+        for(String[] fields : readFields(stopFile)) {
+            putStopLine(fields);
+        }
+        for(String[] fields : readFields(tripFile)) {
+            putTripLine(fields[0], Arrays.asList(fields).subList(1, fields.length));
+        }
+    }
+
+
+    /**
+     * The fields of every line after the title, skipping blank lines.
+     */
+    private static List<String[]> readFields(File file) throws IOException {
+        List<String[]> lines = new ArrayList<String[]>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            while((line = reader.readLine()) != null) {
+                if(!line.trim().isEmpty()) {
+                    lines.add(line.split("\t"));
+                }
+            }
+        }
+        return lines;
+    }
+
+
+    /**
+     * Writes the lines out as a feed in the directory, then loads and freezes it.
+     */
+    private TransitNetwork freshLoad(File dir) throws IOException {
+        File stopFile = new File(dir, "stops.txt");
+        File tripFile = new File(dir, "trips.txt");
+        try (PrintWriter out = new PrintWriter(new FileWriter(stopFile))) {
+            out.println("stop_id\tstop_name\tstop_lat\tstop_lon");
+            for(String[] fields : stopLines.values()) {
+                out.println(String.join("\t", fields));
+            }
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(tripFile))) {
+            out.println("trip_id\tstop_sequence");
+            for(Map.Entry<String, List<String>> trip : tripLines.entrySet()) {
+                out.println(trip.getKey() + "\t" + String.join("\t", trip.getValue()));
+            }
+        }
+        NetworkSnapshot.fileFor(stopFile).delete();     //the files are rewritten too quickly for it to notice
+        FeedLoader loader = newLoader();
+        loader.load(stopFile, tripFile);
+        return TransitNetwork.freeze(loader, WalkingTransfers.DEFAULT_RADIUS, StopQueries.MAX_RESULTS);
+    }
+
+
+    /**
+     * A few random changes, made to the lines as they are added to the update.
+     */
+    private FeedUpdate randomUpdate() {
+        FeedUpdate update = new FeedUpdate();
+        int count = 1 + random.nextInt(MAX_CHANGES);
+        for(int i = 0; i < count; i++) {
+            switch(random.nextInt(7)) {
+                case 0:
+                case 1:
+                    String newTrip = "check-trip-" + added++;
+                    List<String> newStops = randomStops();
+                    update.putTrip(newTrip, newStops);
+                    putTripLine(newTrip, newStops);
+                    break;
+                case 2:
+                    String replaced = tripIds.get(random.nextInt(tripIds.size()));
+                    List<String> replacedStops = randomStops();
+                    update.putTrip(replaced, replacedStops);
+                    putTripLine(replaced, replacedStops);
+                    break;
+                case 3:
+                    if(tripIds.size() > 1) {
+                        String removed = tripIds.get(random.nextInt(tripIds.size()));
+                        update.removeTrip(removed);
+                        removeTripLine(removed);
+                    }
+                    break;
+                case 4:
+                    String[] near = stopLines.get(stopIds.get(random.nextInt(stopIds.size())));
+                    putStop(update, new String[] {"check-stop-" + added, "Check stop " + added++, near[2], near[3]});
+                    break;
+                case 5:
+                    String[] old = stopLines.get(stopIds.get(random.nextInt(stopIds.size())));
+                    String name = random.nextBoolean() ? old[1] : "Renamed stop " + added++;
+                    putStop(update, new String[] {old[0], name, old[2], old[3]});
+                    break;
+                default:
+                    for(int tries = 0; tries < 20; tries++) {
+                        String unused = stopIds.get(random.nextInt(stopIds.size()));
+                        if(tripsUsing.getOrDefault(unused, 0) == 0 && stopIds.size() > 1) {
+                            update.removeStop(unused);
+                            stopLines.remove(unused);
+                            stopIds.remove(unused);
+                            break;
+                        }
+                    }
+            }
+        }
+        return update;
+    }
+
+
+    /**
+     * Puts the stop with its location moved a little, up to about 300m each way.
+     */
+    private void putStop(FeedUpdate update, String[] fields) {
+        float lat = Float.parseFloat(fields[2]) + (random.nextFloat() - 0.5f) * 0.005f;
+        float lon = Float.parseFloat(fields[3]) + (random.nextFloat() - 0.5f) * 0.005f;
+        fields[2] = Float.toString(lat);
+        fields[3] = Float.toString(lon);
+        update.putStop(fields[0], fields[1], lat, lon);
+        putStopLine(fields);
+    }
+
+
+    /**
+     * Stops for a trip: part of an existing trip's stops, a trip's stops with a random stop added, or a few random
+     * stops, sometimes only one or with a stop visited twice.
+     */
+    private List<String> randomStops() {
+        List<String> from = tripLines.get(tripIds.get(random.nextInt(tripIds.size())));
+        List<String> stops;
+        switch(random.nextInt(3)) {
+            case 0:
+                int first = random.nextInt(from.size());
+                stops = new ArrayList<String>(from.subList(first, first + 1 + random.nextInt(from.size() - first)));
+                break;
+            case 1:
+                stops = new ArrayList<String>(from);
+                stops.add(random.nextInt(stops.size() + 1), stopIds.get(random.nextInt(stopIds.size())));
+                break;
+            default:
+                stops = new ArrayList<String>();
+                int length = 1 + random.nextInt(6);
+                for(int i = 0; i < length; i++) {
+                    stops.add(stopIds.get(random.nextInt(stopIds.size())));
+                }
+                if(random.nextInt(4) == 0) {
+                    stops.add(stops.get(0));
+                }
+        }
+        return stops;
+    }
+
+
+    private void putStopLine(String[] fields) {
+        if(stopLines.put(fields[0], fields) == null) {
+            stopIds.add(fields[0]);
+        }
+    }
+
+
+    private void putTripLine(String tripId, List<String> stops) {
+        if(tripLines.containsKey(tripId)) {
+            removeTripLine(tripId);
+        }
+        tripLines.put(tripId, new ArrayList<String>(stops));
+        tripIds.add(tripId);
+        for(String stopId : new HashSet<String>(stops)) {
+            tripsUsing.merge(stopId, 1, Integer::sum);
+        }
+    }
+
+
+    private void removeTripLine(String tripId) {
+        for(String stopId : new HashSet<String>(tripLines.remove(tripId))) {
+            tripsUsing.merge(stopId, -1, Integer::sum);
+        }
+        tripIds.remove(tripId);
+    }
+
+
+    /**
+     * Compares the updated snapshot with the fresh one, adding up and printing the mismatches.
+     */
+    private void compare(TransitNetwork updated, TransitNetwork fresh) {
+        reported = 0;
+        checkPositions(updated);
+        same("stop count", updated.getStops().size(), fresh.getStops().size());
+        same("trip count", updated.getTrips().size(), fresh.getTrips().size());
+        same("connections", connectionTrips(updated), connectionTrips(fresh));
+        for(Stop stop : fresh.getStops()) {
+            Stop other = updated.getStop(stop.getStopId());
+            if(other == null) {
+                mismatch("stop " + stop.getStopId() + " missing");
+                continue;
+            }
+            String what = "stop " + stop.getStopId() + " ";
+            same(what + "name", other.getName(), stop.getName());
+            same(what + "location", other.getStopLocation().x + "," + other.getStopLocation().y,
+                    stop.getStopLocation().x + "," + stop.getStopLocation().y);
+            same(what + "graph", outgoing(updated, other), outgoing(fresh, stop));
+            same(what + "graph in", incoming(updated, other), incoming(fresh, stop));
+            same(what + "edges", edges(updated, other), edges(fresh, stop));
+            same(what + "trips served", updated.getIndex().tripsServed(other), fresh.getIndex().tripsServed(stop));
+            same(what + "trips through", tripsThrough(updated, other), tripsThrough(fresh, stop));
+            same(what + "transfers", transfers(updated, other), transfers(fresh, stop));
+            same(what + "by name", names(Collections.singletonList(updated.findByName(stop.getName()))),
+                    names(Collections.singletonList(fresh.findByName(stop.getName()))));
+        }
+        for(Trip trip : fresh.getTrips()) {
+            Trip other = updated.getTrip(trip.getTripId());
+            if(other == null) {
+                mismatch("trip " + trip.getTripId() + " missing");
+            } else {
+                same("trip " + trip.getTripId() + " stops", ids(other.getStops()), ids(trip.getStops()));
+            }
+        }
+
+        List<Stop> stops = fresh.getStops();
+        for(int i = 0; i < SAMPLES; i++) {
+            String name = stops.get(random.nextInt(stops.size())).getName();
+            String prefix = name.substring(0, Math.min(name.length(), 1 + random.nextInt(4)));
+            same("top with " + prefix, names(updated.topWithPrefix(prefix)), names(fresh.topWithPrefix(prefix)));
+            same("count with " + prefix, updated.countWithPrefix(prefix), fresh.countWithPrefix(prefix));
+            same("within typos of " + prefix, names(updated.withinTypos(prefix, 1)), names(fresh.withinTypos(prefix, 1)));
+            int from = random.nextInt(name.length());
+            String infix = name.substring(from, Math.min(name.length(), from + 1 + random.nextInt(4)));
+            same("containing " + infix, new TreeSet<String>(ids(updated.findContaining(infix))),
+                    new TreeSet<String>(ids(fresh.findContaining(infix))));
+
+            Location at = stops.get(random.nextInt(stops.size())).getStopLocation().moveBy(random.nextGaussian(), random.nextGaussian());
+            same("nearest to " + at, at.distance(updated.nearest(at).getStopLocation()), at.distance(fresh.nearest(at).getStopLocation()));
+        }
+
+        for(int i = 0; i < ROUTED_STOPS; i++) {
+            Stop stop = stops.get(random.nextInt(stops.size()));
+            same("trips needed from " + stop.getStopId(), tripsNeeded(updated, updated.getStop(stop.getStopId())), tripsNeeded(fresh, stop));
+        }
+
+        double minX = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        for(Stop stop : stops) {
+            minX = Math.min(minX, stop.getStopLocation().x);
+            maxX = Math.max(maxX, stop.getStopLocation().x);
+            minY = Math.min(minY, stop.getStopLocation().y);
+            maxY = Math.max(maxY, stop.getStopLocation().y);
+        }
+        double size = IMAGE_SIZE / Math.max(maxX - minX, maxY - minY);
+        same("drawing", draw(updated, new Location(minX, maxY), size), draw(fresh, new Location(minX, maxY), size));
+        for(int zoom = 4; zoom <= 64; zoom *= 4) {
+            Location centre = stops.get(random.nextInt(stops.size())).getStopLocation();
+            Location origin = centre.moveBy(-IMAGE_SIZE / 2 / (size * zoom), IMAGE_SIZE / 2 / (size * zoom));
+            same("drawing at " + zoom + "x", draw(updated, origin, size * zoom), draw(fresh, origin, size * zoom));
+        }
+    }
+
+
+    /**
+     * Every stop, trip and connection of the updated snapshot must be at its own index, in the lists and the graph.
+     */
+    private void checkPositions(TransitNetwork net) {
+        for(int i = 0; i < net.getStops().size(); i++) {
+            same("stop index", net.getStops().get(i).getIndex(), i);
+            same("graph stop", net.getGraph().getStop(i) == net.getStops().get(i), true);
+        }
+        for(int i = 0; i < net.getTrips().size(); i++) {
+            same("trip index", net.getTrips().get(i).getIndex(), i);
+            same("index trip", net.getIndex().getTrip(i) == net.getTrips().get(i), true);
+        }
+        for(int i = 0; i < net.getConnections().size(); i++) {
+            same("connection index", net.getConnections().get(i).getIndex(), i);
+            same("graph connection", net.getGraph().getConnection(i) == net.getConnections().get(i), true);
+        }
+    }
+
+
+    private void same(String what, Object updated, Object fresh) {
+        if(!Objects.equals(updated, fresh)) {
+            mismatch(what + ": updated " + updated + ", fresh " + fresh);
+        }
+    }
+
+
+    private void mismatch(String message) {
+        mismatches++;
+        if(reported++ < MAX_REPORTED) {
+            System.out.println("  " + message);
+        }
+    }
+
+
+    /**
+     * "from id -> to id" for every connection, with its trip ids sorted.
+     */
+    private static Map<String, List<String>> connectionTrips(TransitNetwork net) {
+        Map<String, List<String>> found = new TreeMap<String, List<String>>();
+        for(Connection conn : net.getConnections()) {
+            List<String> trips = new ArrayList<String>(conn.getTripIds());
+            Collections.sort(trips);
+            found.put(conn.getFromStop().getStopId() + " -> " + conn.getToStop().getStopId(), trips);
+        }
+        return found;
+    }
+
+
+    /**
+     * The stop's row of the graph, as the ids of the connection ends and targets, sorted.
+     */
+    private static List<String> outgoing(TransitNetwork net, Stop stop) {
+        TransitGraph graph = net.getGraph();
+        List<String> found = new ArrayList<String>();
+        for(int i = graph.outBegin(stop.getIndex()); i < graph.outEnd(stop.getIndex()); i++) {
+            Connection conn = graph.getConnection(graph.outEdge(i));
+            found.add(conn.getFromStop().getStopId() + " -> " + conn.getToStop().getStopId() + " / " + graph.getStop(graph.outTarget(i)).getStopId());
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+
+    /**
+     * The stop's incoming row of the graph, as the ids of the connection ends and sources, sorted.
+     */
+    private static List<String> incoming(TransitNetwork net, Stop stop) {
+        TransitGraph graph = net.getGraph();
+        List<String> found = new ArrayList<String>();
+        for(int i = graph.inBegin(stop.getIndex()); i < graph.inEnd(stop.getIndex()); i++) {
+            Connection conn = graph.getConnection(graph.inEdge(i));
+            found.add(conn.getFromStop().getStopId() + " -> " + conn.getToStop().getStopId() + " / " + graph.getStop(graph.inSource(i)).getStopId());
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+
+    /**
+     * The stop's edges as the graph gives them, out then in, as the ids of the connection ends, sorted.
+     */
+    private static List<String> edges(TransitNetwork net, Stop stop) {
+        List<String> found = new ArrayList<String>();
+        for(Connection conn : net.getGraph().getOutgoingEdges(stop)) {
+            found.add("out " + conn.getFromStop().getStopId() + " -> " + conn.getToStop().getStopId());
+        }
+        for(Connection conn : net.getGraph().getIngoingEdges(stop)) {
+            found.add("in " + conn.getFromStop().getStopId() + " -> " + conn.getToStop().getStopId());
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+
+    private static List<String> tripsThrough(TransitNetwork net, Stop stop) {
+        BitSet trips = net.getIndex().tripsThrough(Collections.singletonList(stop));
+        List<String> found = new ArrayList<String>();
+        for(int t = trips.nextSetBit(0); t >= 0; t = trips.nextSetBit(t + 1)) {
+            found.add(net.getIndex().getTrip(t).getTripId());
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+
+    private static List<String> transfers(TransitNetwork net, Stop stop) {
+        WalkingTransfers transfers = net.getTransfers();
+        List<String> found = new ArrayList<String>();
+        for(int i = transfers.begin(stop.getIndex()); i < transfers.end(stop.getIndex()); i++) {
+            found.add(net.getStops().get(transfers.target(i)).getStopId() + " " + transfers.distance(i));
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+
+    /**
+     * The trips needed to reach each stop, by stop id.
+     */
+    private static Map<String, Integer> tripsNeeded(TransitNetwork net, Stop from) {
+        int[] rounds = net.getRouter().tripsNeeded(from, 4);
+        Map<String, Integer> found = new TreeMap<String, Integer>();
+        for(int s = 0; s < rounds.length; s++) {
+            found.put(net.getStops().get(s).getStopId(), rounds[s]);
+        }
+        return found;
+    }
+
+
+    private static List<String> names(List<Stop> stops) {
+        List<String> found = new ArrayList<String>();
+        if(stops != null) {
+            for(Stop stop : stops) {
+                found.add(stop == null ? null : stop.getName());
+            }
+        }
+        return found;
+    }
+
+
+    private static List<String> ids(List<Stop> stops) {
+        List<String> found = new ArrayList<String>();
+        for(Stop stop : stops) {
+            found.add(stop.getStopId());
+        }
+        return found;
+    }
+
+
+    /**
+     * Draws the network with every stop selected, so none is left out for sharing a few pixels with another and
+     * the picture doesn't depend on the order the stops are found in. Returns a hash of the pixels.
+     */
+    private static int draw(TransitNetwork net, Location origin, double size) {
+        BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics g = image.getGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, IMAGE_SIZE, IMAGE_SIZE);
+        net.getRenderer().draw(g, new Dimension(IMAGE_SIZE, IMAGE_SIZE), origin, size, new HashSet<Stop>(net.getStops()), Collections.emptySet());
+        g.dispose();
+        return Arrays.hashCode(image.getRGB(0, 0, IMAGE_SIZE, IMAGE_SIZE, null, 0, IMAGE_SIZE));
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.*;
+
+/**
+ * A* searching from both ends at once, forward from the start and backward from the end, until the two
+ * searches can no longer find anything shorter than the best path through a node both have reached.
+ * Both searches use the average potential p(v) = (dist(v, end) - dist(v, start)) / 2, the forward search
+ * ordering its fringe by costFromStart + p(v) and the backward one by costFromEnd - p(v). Straight line
+ * distance is consistent when no segment is shorter than the distance between its nodes, which makes p
+ * consistent for both searches at once, and since the potentials cancel out along any path the
+ * search can stop as soon as the two smallest keys add up to at least the best path found so far.
+ * A node is only expanded again if a shorter way to it turns up, which can only happen where a
+ * segment's recorded length is a little shorter than the straight line between its nodes.
+ * The two searches keep their costs in the graph's forward and backward SearchStates for this thread, and
+ * their fringes in those states' NodeHeaps, where a shorter way to a node lowers its key in place.
+ */
+public class BidirectionalAStar {
+	private final Graph graph;
+	private final Node startNode, endNode;
+	//cost of each node and the segment it was reached by, towards the start going forward and towards the end going backward
+	private SearchState forwardState, backwardState;
+	private int settled;
+
+
+	public BidirectionalAStar(Graph graph, Node startNode, Node endNode) {
+		this.graph = graph;
+		this.startNode = startNode;
+		this.endNode = endNode;
+	}
+
+
+	/**
+	 * Finds the shortest path, returning its segments pushed from the end node back to the start node
+	 * (the same order Mapper.pathFromState gives), or an empty stack if the end can't be reached.
+	 */
+	public Stack<Segment> search() {
+		forwardState = graph.forwardState();
+		backwardState = graph.backwardState();
+		forwardState.start();
+		backwardState.start();
+		NodeHeap forward = forwardState.getFringe();
+		NodeHeap backward = backwardState.getFringe();
+		forwardState.reach(startNode.getIndex(), 0, SearchState.NONE);
+		backwardState.reach(endNode.getIndex(), 0, SearchState.NONE);
+		forward.push(startNode.getIndex(), potential(startNode));
+		backward.push(endNode.getIndex(), -potential(endNode));
+
+		double bestPath = Double.POSITIVE_INFINITY;
+		Node meeting = startNode == endNode ? startNode : null;
+		if(meeting != null) {
+			bestPath = 0;
+		}
+		while(!forward.isEmpty() && !backward.isEmpty()) {
+			if(forward.peekKey() + backward.peekKey() >= bestPath) {
+				break;	//no path through an unexpanded node can be shorter
+			}
+			boolean isForward = forward.peekKey() <= backward.peekKey();
+			NodeHeap fringe = isForward ? forward : backward;
+			SearchState state = isForward ? forwardState : backwardState;
+			SearchState otherState = isForward ? backwardState : forwardState;
+			double sign = isForward ? 1 : -1;
+
+			int curr = fringe.poll();
+			Node currNode = graph.getNode(curr);
+			settled++;
+			for(Segment seg : currNode.segments) {
+				Node neighbour = seg.end == currNode ? seg.start : seg.end;
+				double costFromStart = state.getCost(curr) + seg.length;
+				if(costFromStart < state.getCost(neighbour.getIndex())) {
+					state.reach(neighbour.getIndex(), costFromStart, seg.getIndex());
+					fringe.push(neighbour.getIndex(), costFromStart + sign * potential(neighbour));
+					double toOtherEnd = otherState.getCost(neighbour.getIndex());
+					if(costFromStart + toOtherEnd < bestPath) {
+						bestPath = costFromStart + toOtherEnd;
+						meeting = neighbour;
+					}
+				}
+			}
+		}
+		return meeting == null ? new Stack<Segment>() : pathThrough(meeting);
+	}
+
+
+	/**
+	 * Number of nodes expanded by both searches, counting a node again each time a shorter way to it is expanded.
+	 */
+	public int getSettled() {
+		return settled;
+	}
+
+
+	private double potential(Node node) {
+		return (node.location.distance(endNode.location) - node.location.distance(startNode.location)) / 2;
+	}
+
+
+	/**
+	 * Joins the forward path to the meeting node with the backward path from it.
+	 */
+	private Stack<Segment> pathThrough(Node meeting) {
+		List<Segment> toEnd = new ArrayList<Segment>();
+		Node currNode = meeting;
+		while(currNode != endNode) {
+			Segment seg = graph.getSegment(backwardState.getReachedBy(currNode.getIndex()));
+			toEnd.add(seg);
+			currNode = seg.end == currNode ? seg.start : seg.end;
+		}
+		Stack<Segment> pathSeg = new Stack<Segment>();
+		for(int i = toEnd.size() - 1; i >= 0; i--) {
+			pathSeg.push(toEnd.get(i));
+		}
+		currNode = meeting;
+		while(currNode != startNode) {
+			Segment seg = graph.getSegment(forwardState.getReachedBy(currNode.getIndex()));
+			pathSeg.push(seg);
+			currNode = seg.end == currNode ? seg.start : seg.end;
+		}
+		return pathSeg;
+	}
+}
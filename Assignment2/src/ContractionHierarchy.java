@@ -0,0 +1,710 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction Hierarchies over the road graph, so a shortest path query only has to search a few hundred nodes.
+ *
+ * Preprocessing contracts the nodes one by one from least to most important: a node is taken out of the graph
+ * and a shortcut is added between two of its neighbours whenever the path through it was the only shortest way
+ * between them (no other "witness" path is as short). A shortcut stands for the two edges it replaces, so it can be
+ * unpacked back into segments. A node's rank is when it was contracted, and the edges (segments and shortcuts)
+ * kept for queries are only the upward ones, from each node to neighbours of higher rank.
+ *
+ * Nodes are picked by twice the edge difference (shortcuts added minus edges removed), plus the number of neighbours
+ * already contracted and the node's level (one more than the highest level of its contracted neighbours), which
+ * keeps the contraction spread evenly over the map and the hierarchy shallow. Contraction runs in rounds over all
+ * cores: each round takes every node whose priority is lower than that of all remaining nodes within two hops,
+ * works out their shortcuts in parallel, then adds them all. Witness searches in a round go around every node of
+ * the round, as those are all being removed, so no shortcut is missed because its witness was contracted at the
+ * same time.
+ *
+ * A query is Dijkstra searching upward from both the start and end node, every shortest path going up to its
+ * highest ranked node and back down. The hierarchy can be saved to a file and loaded again for the same graph.
+ */
+public class ContractionHierarchy {
+	private static final int MAGIC = 0x43484752; //"CHGR"
+	private static final int VERSION = 1;
+	private static final int NONE = -1;
+	//a witness search gives up after settling this many nodes, a missed witness only costs an extra shortcut
+	private static final int WITNESS_SETTLE_LIMIT = 500;
+	//a smaller limit for the searches that only estimate a node's priority, which are run far more often
+	private static final int PRIORITY_SETTLE_LIMIT = 50;
+
+	public static final String FILE_NAME = "contraction.ch";
+
+	private final Graph graph;
+	private final long fingerprint;
+	private final int[] rank;
+	//every edge by id: the nodes it joins, and either its segment or the two edges of a shortcut and the node between them
+	private final int[] edgeFrom, edgeTo, edgeSegment, edgeFirst, edgeSecond, edgeVia;
+	//the upward edges of node v are upEdge[upBegin[v]] to upEdge[upBegin[v + 1] - 1], going to upTarget
+	private final int[] upBegin, upTarget, upEdge;
+	private final double[] upWeight;
+
+
+	private ContractionHierarchy(Graph graph, long fingerprint, int[] rank, int[] edgeFrom, int[] edgeTo, int[] edgeSegment,
+			int[] edgeFirst, int[] edgeSecond, int[] edgeVia, int[] upBegin, int[] upTarget, int[] upEdge, double[] upWeight) {
+		this.graph = graph;
+		this.fingerprint = fingerprint;
+		this.rank = rank;
+		this.edgeFrom = edgeFrom;
+		this.edgeTo = edgeTo;
+		this.edgeSegment = edgeSegment;
+		this.edgeFirst = edgeFirst;
+		this.edgeSecond = edgeSecond;
+		this.edgeVia = edgeVia;
+		this.upBegin = upBegin;
+		this.upTarget = upTarget;
+		this.upEdge = upEdge;
+		this.upWeight = upWeight;
+	}
+
+
+	/**
+	 * Contracts every node of the graph, using all cores.
+	 */
+	public static ContractionHierarchy build(Graph graph) {
+		return new Builder(graph).contract();
+	}
+
+
+	/**
+	 * Loads the hierarchy saved for this graph, or builds it and saves it if there is no file or it was made
+	 * for different data. A file that can't be read or written is passed to warnings, and the built hierarchy
+	 * is used anyway.
+	 */
+	public static ContractionHierarchy loadOrBuild(Graph graph, File file, Consumer<String> warnings) {
+		if (file.exists()) {
+			try {
+				return load(graph, file);
+			} catch (IOException e) {
+				warnings.accept("Rebuilt " + file + ": " + e.getMessage());
+			}
+		}
+		ContractionHierarchy hierarchy = build(graph);
+		try {
+			hierarchy.save(file);
+		} catch (IOException e) {
+			warnings.accept("Error saving " + file + ": " + e);
+		}
+		return hierarchy;
+	}
+
+
+	/**
+	 * Starts a query between two nodes of the graph, see Query.search.
+	 */
+	public Query query(Node startNode, Node endNode) {
+		return new Query(startNode, endNode);
+	}
+
+
+	public int getRank(Node node) {
+		return rank[node.getIndex()];
+	}
+
+
+	/**
+	 * Number of edges kept, segments and shortcuts.
+	 */
+	public int edgeCount() {
+		return edgeFrom.length;
+	}
+
+
+	public int shortcutCount() {
+		int shortcuts = 0;
+		for (int segment : edgeSegment) {
+			if (segment == NONE) {
+				shortcuts++;
+			}
+		}
+		return shortcuts;
+	}
+
+
+	/**
+	 * Writes the hierarchy under a temporary name first, so a half written file is never left behind.
+	 * Layout (big endian): magic, version, the graph's fingerprint, node count, edge count, the ranks, then for each
+	 * edge its from, to, segment, first, second and via, then the upward graph's begin, target, edge and weight arrays.
+	 */
+	public void save(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(rank.length);
+			out.writeInt(edgeFrom.length);
+			writeInts(out, rank);
+			for (int e = 0; e < edgeFrom.length; e++) {
+				out.writeInt(edgeFrom[e]);
+				out.writeInt(edgeTo[e]);
+				out.writeInt(edgeSegment[e]);
+				out.writeInt(edgeFirst[e]);
+				out.writeInt(edgeSecond[e]);
+				out.writeInt(edgeVia[e]);
+			}
+			writeInts(out, upBegin);
+			writeInts(out, upTarget);
+			writeInts(out, upEdge);
+			for (double weight : upWeight) {
+				out.writeDouble(weight);
+			}
+		}
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Could not replace " + file);
+			}
+		}
+	}
+
+
+	/**
+	 * Reads a saved hierarchy, throwing an IOException if it is not one or was made for a different graph.
+	 */
+	public static ContractionHierarchy load(Graph graph, File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("not a contraction hierarchy file of this version");
+			}
+			long fingerprint = in.readLong();
+			if (fingerprint != fingerprint(graph) || in.readInt() != graph.nodeCount()) {
+				throw new IOException("made for a different graph");
+			}
+			int edges = in.readInt();
+			int[] rank = readInts(in, graph.nodeCount());
+			int[] edgeFrom = new int[edges], edgeTo = new int[edges], edgeSegment = new int[edges];
+			int[] edgeFirst = new int[edges], edgeSecond = new int[edges], edgeVia = new int[edges];
+			for (int e = 0; e < edges; e++) {
+				edgeFrom[e] = in.readInt();
+				edgeTo[e] = in.readInt();
+				edgeSegment[e] = in.readInt();
+				edgeFirst[e] = in.readInt();
+				edgeSecond[e] = in.readInt();
+				edgeVia[e] = in.readInt();
+			}
+			int[] upBegin = readInts(in, graph.nodeCount() + 1);
+			int upCount = upBegin[graph.nodeCount()];
+			int[] upTarget = readInts(in, upCount);
+			int[] upEdge = readInts(in, upCount);
+			double[] upWeight = new double[upCount];
+			for (int i = 0; i < upCount; i++) {
+				upWeight[i] = in.readDouble();
+			}
+			return new ContractionHierarchy(graph, fingerprint, rank, edgeFrom, edgeTo, edgeSegment, edgeFirst, edgeSecond,
+					edgeVia, upBegin, upTarget, upEdge, upWeight);
+		}
+	}
+
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+
+	private static int[] readInts(DataInputStream in, int count) throws IOException {
+		int[] values = new int[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+
+	/**
+	 * A hash of the node IDs and of each segment's nodes and length, in index order, to tell if a saved
+	 * hierarchy belongs to the graph.
+	 */
+	private static long fingerprint(Graph graph) {
+		long hash = graph.nodeCount();
+		for (int i = 0; i < graph.nodeCount(); i++) {
+			hash = hash * 31 + graph.getNode(i).nodeID;
+		}
+		for (int i = 0; i < graph.segmentCount(); i++) {
+			Segment seg = graph.getSegment(i);
+			hash = hash * 31 + seg.start.nodeID;
+			hash = hash * 31 + seg.end.nodeID;
+			hash = hash * 31 + Double.doubleToLongBits(seg.length);
+		}
+		return hash;
+	}
+
+
+	/**
+	 * Preprocesses a graph from the command line and saves the hierarchy, by default next to the segments file.
+	 * Usage: java ContractionHierarchy nodes.tab roads.tab segments.tab [output file]
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: java ContractionHierarchy nodes.tab roads.tab segments.tab [output file]");
+			return;
+		}
+		File segments = new File(args[2]);
+		File output = args.length > 3 ? new File(args[3]) : new File(segments.getAbsoluteFile().getParentFile(), FILE_NAME);
+		Graph graph = new Graph(new File(args[0]), new File(args[1]), segments, null);
+		long start = System.nanoTime();
+		ContractionHierarchy hierarchy = build(graph);
+		long elapsed = System.nanoTime() - start;
+		try {
+			hierarchy.save(output);
+		} catch (IOException e) {
+			System.err.println("Error writing " + output + ": " + e);
+			return;
+		}
+		System.out.printf("%d nodes, %d segments, %d shortcuts, contracted in %.1fms, written to %s%n",
+				graph.nodeCount(), graph.segmentCount(), hierarchy.shortcutCount(), elapsed / 1e6, output);
+	}
+
+
+	/**
+	 * One shortest path query, searching upward from both ends. Costs and the edge each node was reached by
+	 * are kept in the graph's SearchStates for the thread running the search, so several threads can query
+	 * the same hierarchy at once.
+	 */
+	public class Query {
+		private final Node startNode, endNode;
+		private SearchState forwardState, backwardState;
+		private int settled;
+
+
+		private Query(Node startNode, Node endNode) {
+			this.startNode = startNode;
+			this.endNode = endNode;
+		}
+
+
+		/**
+		 * Finds the shortest path, returning its segments pushed from the end node back to the start node
+		 * (the same order as BidirectionalAStar.search), or an empty stack if the end can't be reached.
+		 * Each side stops once its smallest key is no shorter than the best path found, as everything it could
+		 * still reach is further up and further away.
+		 */
+		public Stack<Segment> search() {
+			int start = startNode.getIndex();
+			int end = endNode.getIndex();
+			forwardState = graph.forwardState();
+			backwardState = graph.backwardState();
+			forwardState.start();
+			backwardState.start();
+			NodeHeap forward = forwardState.getFringe();
+			NodeHeap backward = backwardState.getFringe();
+			forwardState.reach(start, 0, NONE);
+			backwardState.reach(end, 0, NONE);
+			forward.push(start, 0);
+			backward.push(end, 0);
+
+			double bestPath = Double.POSITIVE_INFINITY;
+			int meeting = NONE;
+			while (true) {
+				boolean forwardOn = !forward.isEmpty() && forward.peekKey() < bestPath;
+				boolean backwardOn = !backward.isEmpty() && backward.peekKey() < bestPath;
+				if (!forwardOn && !backwardOn) {
+					break;
+				}
+				boolean isForward = forwardOn && (!backwardOn || forward.peekKey() <= backward.peekKey());
+				NodeHeap fringe = isForward ? forward : backward;
+				SearchState state = isForward ? forwardState : backwardState;
+				SearchState otherState = isForward ? backwardState : forwardState;
+
+				int node = fringe.poll();
+				double cost = state.getCost(node);
+				settled++;
+				double toOtherEnd = otherState.getCost(node);
+				if (cost + toOtherEnd < bestPath) {
+					bestPath = cost + toOtherEnd;
+					meeting = node;
+				}
+				for (int i = upBegin[node]; i < upBegin[node + 1]; i++) {
+					int target = upTarget[i];
+					double costFromStart = cost + upWeight[i];
+					if (costFromStart < state.getCost(target)) {
+						state.reach(target, costFromStart, upEdge[i]);
+						fringe.push(target, costFromStart);
+					}
+				}
+			}
+			return meeting == NONE ? new Stack<Segment>() : pathThrough(meeting);
+		}
+
+
+		/**
+		 * Number of nodes expanded by both searches.
+		 */
+		public int getSettled() {
+			return settled;
+		}
+
+
+		/**
+		 * Unpacks the edges from the start up to the meeting node and from it down to the end into segments.
+		 */
+		private Stack<Segment> pathThrough(int meeting) {
+			List<Integer> upFromStart = new ArrayList<Integer>();
+			for (int node = meeting; node != startNode.getIndex(); ) {
+				int edge = forwardState.getReachedBy(node);
+				upFromStart.add(edge);
+				node = edgeFrom[edge] == node ? edgeTo[edge] : edgeFrom[edge];
+			}
+			List<Segment> path = new ArrayList<Segment>();
+			int node = startNode.getIndex();
+			for (int i = upFromStart.size() - 1; i >= 0; i--) {
+				int edge = upFromStart.get(i);
+				unpack(edge, node, path);
+				node = edgeFrom[edge] == node ? edgeTo[edge] : edgeFrom[edge];
+			}
+			while (node != endNode.getIndex()) {
+				int edge = backwardState.getReachedBy(node);
+				unpack(edge, node, path);
+				node = edgeFrom[edge] == node ? edgeTo[edge] : edgeFrom[edge];
+			}
+			Stack<Segment> pathSeg = new Stack<Segment>();
+			for (int i = path.size() - 1; i >= 0; i--) {
+				pathSeg.push(path.get(i));
+			}
+			return pathSeg;
+		}
+
+
+		/**
+		 * Adds the segments of the edge to the path in order, walking it from the given end.
+		 */
+		private void unpack(int edge, int from, List<Segment> path) {
+			if (edgeSegment[edge] != NONE) {
+				path.add(graph.getSegment(edgeSegment[edge]));
+				return;
+			}
+			boolean firstFromHere = edgeFrom[edgeFirst[edge]] == from || edgeTo[edgeFirst[edge]] == from;
+			unpack(firstFromHere ? edgeFirst[edge] : edgeSecond[edge], from, path);
+			unpack(firstFromHere ? edgeSecond[edge] : edgeFirst[edge], edgeVia[edge], path);
+		}
+	}
+
+
+	/**
+	 * The working state of preprocessing: an undirected graph that shrinks as nodes are contracted, with
+	 * shortcuts added to it, and every edge ever made kept by id.
+	 */
+	private static class Builder {
+		private final Graph graph;
+		private final int nodeCount;
+		//edges of each remaining node to other remaining nodes, by edge id
+		private final int[][] adjacent;
+		private final int[] degree;
+		private final boolean[] contracted;
+		private final boolean[] inRound;
+		private final int[] rank;
+		private final int[] deletedNeighbours;
+		private final int[] level;
+		private final int[] priority;
+
+		private int edgeCount;
+		private int[] edgeFrom = new int[16], edgeTo = new int[16], edgeSegment = new int[16];
+		private int[] edgeFirst = new int[16], edgeSecond = new int[16], edgeVia = new int[16];
+		private double[] edgeWeight = new double[16];
+
+		//each thread reuses one set of witness search arrays
+		private final ThreadLocal<Witness> witnesses;
+
+
+		Builder(Graph graph) {
+			this.graph = graph;
+			nodeCount = graph.nodeCount();
+			adjacent = new int[nodeCount][4];
+			degree = new int[nodeCount];
+			contracted = new boolean[nodeCount];
+			inRound = new boolean[nodeCount];
+			rank = new int[nodeCount];
+			deletedNeighbours = new int[nodeCount];
+			level = new int[nodeCount];
+			priority = new int[nodeCount];
+			witnesses = ThreadLocal.withInitial(() -> new Witness(nodeCount));
+			for (int i = 0; i < graph.segmentCount(); i++) {
+				Segment seg = graph.getSegment(i);
+				if (seg.start != seg.end) {
+					addEdge(seg.start.getIndex(), seg.end.getIndex(), seg.length, i, NONE, NONE, NONE);
+				}
+			}
+		}
+
+
+		ContractionHierarchy contract() {
+			IntStream.range(0, nodeCount).parallel().forEach((int v) -> priority[v] = priority(v, shortcuts(v, PRIORITY_SETTLE_LIMIT)));
+			List<Integer> remaining = new ArrayList<Integer>();
+			for (int v = 0; v < nodeCount; v++) {
+				remaining.add(v);
+			}
+			int nextRank = 0;
+			while (!remaining.isEmpty()) {
+				//nodes whose (priority, index) is lower than that of every remaining node within two hops
+				List<Integer> round = new ArrayList<Integer>();
+				for (int v : remaining) {
+					if (isLocalMinimum(v)) {
+						round.add(v);
+						inRound[v] = true;
+					}
+				}
+				List<List<double[]>> shortcuts = round.parallelStream().map((Integer v) -> shortcuts(v, WITNESS_SETTLE_LIMIT)).collect(Collectors.toList());
+
+				Set<Integer> dirty = new HashSet<Integer>();
+				for (int r = 0; r < round.size(); r++) {
+					int v = round.get(r);
+					for (double[] shortcut : shortcuts.get(r)) {
+						addShortcut((int) shortcut[0], (int) shortcut[1], shortcut[2], (int) shortcut[3], (int) shortcut[4], v);
+					}
+					for (int i = 0; i < degree[v]; i++) {
+						int neighbour = other(adjacent[v][i], v);
+						deletedNeighbours[neighbour]++;
+						level[neighbour] = Math.max(level[neighbour], level[v] + 1);
+						dirty.add(neighbour);
+						removeFromAdjacent(neighbour, adjacent[v][i]);
+					}
+					contracted[v] = true;
+					inRound[v] = false;
+					rank[v] = nextRank++;
+				}
+				remaining.removeIf((Integer v) -> contracted[v]);
+				dirty.removeIf((Integer v) -> contracted[v]);
+				dirty.parallelStream().forEach((Integer v) -> priority[v] = priority(v, shortcuts(v, PRIORITY_SETTLE_LIMIT)));
+			}
+			return upwardGraph();
+		}
+
+
+		private boolean isLocalMinimum(int v) {
+			for (int i = 0; i < degree[v]; i++) {
+				int neighbour = other(adjacent[v][i], v);
+				if (comesBefore(neighbour, v)) {
+					return false;
+				}
+				for (int j = 0; j < degree[neighbour]; j++) {
+					int secondHop = other(adjacent[neighbour][j], neighbour);
+					if (secondHop != v && comesBefore(secondHop, v)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+
+		private boolean comesBefore(int node, int other) {
+			return priority[node] < priority[other] || (priority[node] == priority[other] && node < other);
+		}
+
+
+		private int priority(int v, List<double[]> shortcuts) {
+			return 2 * (shortcuts.size() - degree[v]) + deletedNeighbours[v] + level[v];
+		}
+
+
+		/**
+		 * The shortcuts needed if v were contracted now, as {from, to, weight, edge from-v, edge v-to}.
+		 * For each neighbour a Dijkstra search that avoids v (and the rest of the round) looks for a witness
+		 * path to each later neighbour that is no longer than the path through v. Only reads the graph,
+		 * so it can run for many nodes at once. A search settling at most limit nodes may miss a witness.
+		 */
+		private List<double[]> shortcuts(int v, int limit) {
+			//the shortest edge to each neighbour
+			Map<Integer, Integer> toNeighbour = new LinkedHashMap<Integer, Integer>();
+			for (int i = 0; i < degree[v]; i++) {
+				int edge = adjacent[v][i];
+				int neighbour = other(edge, v);
+				Integer known = toNeighbour.get(neighbour);
+				if (known == null || edgeWeight[edge] < edgeWeight[known]) {
+					toNeighbour.put(neighbour, edge);
+				}
+			}
+			int[] neighbours = new int[toNeighbour.size()];
+			int[] edges = new int[neighbours.length];
+			int n = 0;
+			for (Map.Entry<Integer, Integer> entry : toNeighbour.entrySet()) {
+				neighbours[n] = entry.getKey();
+				edges[n++] = entry.getValue();
+			}
+
+			List<double[]> shortcuts = new ArrayList<double[]>();
+			for (int i = 0; i + 1 < neighbours.length; i++) {
+				double furthest = 0;
+				for (int j = i + 1; j < neighbours.length; j++) {
+					furthest = Math.max(furthest, edgeWeight[edges[i]] + edgeWeight[edges[j]]);
+				}
+				Witness witness = witnessSearch(neighbours[i], v, furthest, limit);
+				for (int j = i + 1; j < neighbours.length; j++) {
+					double through = edgeWeight[edges[i]] + edgeWeight[edges[j]];
+					if (witness.cost(neighbours[j]) > through) {
+						shortcuts.add(new double[] {neighbours[i], neighbours[j], through, edges[i], edges[j]});
+					}
+				}
+			}
+			return shortcuts;
+		}
+
+
+		/**
+		 * Costs from the source to the remaining nodes within maxCost, not going through v or any node of the
+		 * current round, left in the thread's Witness. Gives up after settling limit nodes, the costs found so far
+		 * are then upper bounds.
+		 */
+		private Witness witnessSearch(int source, int v, double maxCost, int limit) {
+			Witness witness = witnesses.get();
+			witness.start(source);
+			int settled = 0;
+			while (!witness.fringe.isEmpty() && settled < limit) {
+				if (witness.fringe.peekKey() > maxCost) {
+					break;
+				}
+				int node = witness.fringe.poll();
+				double cost = witness.cost(node);
+				settled++;
+				for (int i = 0; i < degree[node]; i++) {
+					int edge = adjacent[node][i];
+					int target = other(edge, node);
+					if (target == v || inRound[target]) {
+						continue;
+					}
+					double costFromSource = cost + edgeWeight[edge];
+					if (costFromSource < witness.cost(target)) {
+						witness.setCost(target, costFromSource);
+						witness.fringe.push(target, costFromSource);
+					}
+				}
+			}
+			return witness;
+		}
+
+
+		/**
+		 * Adds the shortcut unless the two nodes already have an edge at least as short.
+		 */
+		private void addShortcut(int from, int to, double weight, int first, int second, int via) {
+			for (int i = 0; i < degree[from]; i++) {
+				int edge = adjacent[from][i];
+				if (other(edge, from) == to && edgeWeight[edge] <= weight) {
+					return;
+				}
+			}
+			addEdge(from, to, weight, NONE, first, second, via);
+		}
+
+
+		private void addEdge(int from, int to, double weight, int segment, int first, int second, int via) {
+			if (edgeCount == edgeFrom.length) {
+				int capacity = edgeCount * 2;
+				edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+				edgeTo = Arrays.copyOf(edgeTo, capacity);
+				edgeSegment = Arrays.copyOf(edgeSegment, capacity);
+				edgeFirst = Arrays.copyOf(edgeFirst, capacity);
+				edgeSecond = Arrays.copyOf(edgeSecond, capacity);
+				edgeVia = Arrays.copyOf(edgeVia, capacity);
+				edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+			}
+			int edge = edgeCount++;
+			edgeFrom[edge] = from;
+			edgeTo[edge] = to;
+			edgeWeight[edge] = weight;
+			edgeSegment[edge] = segment;
+			edgeFirst[edge] = first;
+			edgeSecond[edge] = second;
+			edgeVia[edge] = via;
+			addToAdjacent(from, edge);
+			addToAdjacent(to, edge);
+		}
+
+
+		private void addToAdjacent(int node, int edge) {
+			if (degree[node] == adjacent[node].length) {
+				adjacent[node] = Arrays.copyOf(adjacent[node], degree[node] * 2);
+			}
+			adjacent[node][degree[node]++] = edge;
+		}
+
+
+		private void removeFromAdjacent(int node, int edge) {
+			for (int i = 0; i < degree[node]; i++) {
+				if (adjacent[node][i] == edge) {
+					adjacent[node][i] = adjacent[node][--degree[node]];
+					return;
+				}
+			}
+		}
+
+
+		private int other(int edge, int node) {
+			return edgeFrom[edge] == node ? edgeTo[edge] : edgeFrom[edge];
+		}
+
+
+		/**
+		 * Keeps every edge, each pointing from its lower ranked node to its higher ranked one.
+		 */
+		private ContractionHierarchy upwardGraph() {
+			int[] upBegin = new int[nodeCount + 1];
+			for (int e = 0; e < edgeCount; e++) {
+				upBegin[lower(e) + 1]++;
+			}
+			for (int v = 0; v < nodeCount; v++) {
+				upBegin[v + 1] += upBegin[v];
+			}
+			int[] upTarget = new int[edgeCount];
+			int[] upEdge = new int[edgeCount];
+			double[] upWeight = new double[edgeCount];
+			int[] next = Arrays.copyOf(upBegin, nodeCount);
+			for (int e = 0; e < edgeCount; e++) {
+				int from = lower(e);
+				int i = next[from]++;
+				upTarget[i] = other(e, from);
+				upEdge[i] = e;
+				upWeight[i] = edgeWeight[e];
+			}
+			return new ContractionHierarchy(graph, fingerprint(graph), rank, Arrays.copyOf(edgeFrom, edgeCount),
+					Arrays.copyOf(edgeTo, edgeCount), Arrays.copyOf(edgeSegment, edgeCount), Arrays.copyOf(edgeFirst, edgeCount),
+					Arrays.copyOf(edgeSecond, edgeCount), Arrays.copyOf(edgeVia, edgeCount), upBegin, upTarget, upEdge, upWeight);
+		}
+
+
+		private int lower(int edge) {
+			return rank[edgeFrom[edge]] < rank[edgeTo[edge]] ? edgeFrom[edge] : edgeTo[edge];
+		}
+
+		/**
+		 * The state of one witness search. A node's cost only counts if it was set in the current search,
+		 * so starting a search doesn't have to clear the arrays, and the fringe only empties what is left in it.
+		 */
+		private static class Witness {
+			private final double[] cost;
+			private final int[] searchOf;
+			private int search;
+			private final NodeHeap fringe;
+
+			Witness(int nodeCount) {
+				cost = new double[nodeCount];
+				searchOf = new int[nodeCount];
+				fringe = new NodeHeap(nodeCount);
+			}
+
+			void start(int source) {
+				search++;
+				fringe.clear();
+				setCost(source, 0);
+				fringe.push(source, 0);
+			}
+
+			double cost(int node) {
+				return searchOf[node] == search ? cost[node] : Double.POSITIVE_INFINITY;
+			}
+
+			void setCost(int node, double value) {
+				cost[node] = value;
+				searchOf[node] = search;
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+/**
+ * Compares the two A* fringes on the same queries: the lazy deletion PriorityQueue of FringeObjects, which adds
+ * a new entry for every cheaper way to a node and skips the old ones when they come off, and the NodeHeap, which
+ * lowers the node's key in place. Both searches are the A* loop from Mapper.findShortestPath with straight line
+ * distance as the estimate, differing only in the fringe, and are checked to find paths of the same length.
+ *
+ * Usage: java FringeBenchmark nodes.tab roads.tab segments.tab [queries]   (default 1000 random node pairs)
+ *
+ * Each fringe runs WARMUP_ITERATIONS untimed iterations over the queries, then MEASURED_ITERATIONS timed ones of
+ * about ITERATION_NANOS each, and reports the average time per query (with the fastest iteration), the bytes
+ * allocated per query read from the thread's allocation counter, and the entries added to the fringe per query.
+ * Run it with a fixed heap (e.g. -Xms1g -Xmx1g) so GC sizing doesn't vary between runs.
+ */
+public class FringeBenchmark {
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASURED_ITERATIONS = 5;
+	private static final long ITERATION_NANOS = 1_000_000_000L;
+	private static final int DEFAULT_QUERIES = 1000;
+	private static final long SEED = 261;
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static long pushes;		//entries added to the fringe by the searches run so far
+	private static double sink;
+
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.err.println("Usage: java FringeBenchmark nodes.tab roads.tab segments.tab [queries]");
+			return;
+		}
+		Graph graph = new Graph(new File(args[0]), new File(args[1]), new File(args[2]), null);
+		int queryCount = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_QUERIES;
+		Random random = new Random(SEED);
+		Node[][] queries = new Node[queryCount][];
+		for (int i = 0; i < queryCount; i++) {
+			queries[i] = new Node[] {graph.getNode(random.nextInt(graph.nodeCount())), graph.getNode(random.nextInt(graph.nodeCount()))};
+		}
+
+		for (Node[] query : queries) {
+			double lazy = lazySearch(graph, query[0], query[1]);
+			double heap = heapSearch(graph, query[0], query[1]);
+			if (Math.abs(lazy - heap) > 1e-9) {	//equally short paths can add up a little differently
+				System.err.println("Fringes disagree from " + query[0].nodeID + " to " + query[1].nodeID + ": " + lazy + " and " + heap);
+				return;
+			}
+		}
+
+		System.out.printf("%d nodes, %d segments, %d queries%n", graph.nodeCount(), graph.segmentCount(), queryCount);
+		System.out.printf("%-14s %14s %14s %12s %12s%n", "fringe", "ns/query", "best ns/query", "bytes/query", "adds/query");
+		report("PriorityQueue", measure(queries.length, (int i) -> lazySearch(graph, queries[i][0], queries[i][1])));
+		report("NodeHeap", measure(queries.length, (int i) -> heapSearch(graph, queries[i][0], queries[i][1])));
+		System.out.println("checksum " + sink);
+	}
+
+
+	private static void report(String fringe, double[] result) {
+		String bytes = result[2] < 0 ? "n/a" : String.format("%.1f", result[2]);
+		System.out.printf("%-14s %14.1f %14.1f %12s %12.1f%n", fringe, result[0], result[1], bytes, result[3]);
+	}
+
+
+	/**
+	 * Runs the queries round and round, reading the clock after each one. Returns the average ns per query over
+	 * the measured iterations, the best iteration's, the bytes allocated per query (negative if the JVM can't
+	 * count them) and the fringe entries added per query.
+	 */
+	private static double[] measure(int count, Search search) {
+		for (int w = 0; w < WARMUP_ITERATIONS; w++) {
+			iterate(count, search);
+		}
+		long queries = 0;
+		long nanos = 0;
+		long bytes = 0;
+		long added = 0;
+		double best = Double.MAX_VALUE;
+		for (int m = 0; m < MEASURED_ITERATIONS; m++) {
+			long pushesBefore = pushes;
+			long[] iteration = iterate(count, search);
+			queries += iteration[0];
+			nanos += iteration[1];
+			bytes = iteration[2] < 0 || bytes < 0 ? -1 : bytes + iteration[2];
+			added += pushes - pushesBefore;
+			best = Math.min(best, (double) iteration[1] / iteration[0]);
+		}
+		return new double[] {(double) nanos / queries, best, bytes < 0 ? -1 : (double) bytes / queries, (double) added / queries};
+	}
+
+
+	/**
+	 * One iteration: queries, nanoseconds taken and bytes allocated.
+	 */
+	private static long[] iterate(int count, Search search) {
+		double result = 0;
+		long queries = 0;
+		int i = 0;
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			result += search.run(i);
+			if (++i == count) {
+				i = 0;
+			}
+			queries++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < ITERATION_NANOS);
+		long allocatedAfter = allocatedBytes();
+		sink += result;
+		return new long[] {queries, elapsed, allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore};
+	}
+
+
+	/**
+	 * Bytes allocated so far by this thread, or -1 if the JVM doesn't count them.
+	 */
+	@SuppressWarnings("deprecation")
+	private static long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+
+	/**
+	 * A* with a PriorityQueue of FringeObjects, a node being added again for every cheaper way to it.
+	 * Returns the length of the shortest path, infinite if there isn't one.
+	 */
+	private static double lazySearch(Graph graph, Node startNode, Node endNode) {
+		Queue<FringeObject> fringe = new PriorityQueue<FringeObject>(FringeObject::compareTo);
+		SearchState state = graph.forwardState();
+		state.start();
+		state.reach(startNode.getIndex(), 0, SearchState.NONE);
+		fringe.offer(new FringeObject(startNode, null, 0, startNode.location.distance(endNode.location)));
+		pushes++;
+		while (!fringe.isEmpty()) {
+			FringeObject currFringe = fringe.poll();
+			Node currNode = currFringe.getCurrNode();
+			if (state.isVisited(currNode.getIndex())) {
+				continue;
+			}
+			state.setVisited(currNode.getIndex());
+			if (currNode == endNode) {
+				return currFringe.getCostFromStart();
+			}
+			for (Segment seg : currNode.segments) {
+				Node neighbour = seg.end == currNode ? seg.start : seg.end;
+				double costFromStart = currFringe.getCostFromStart() + seg.length;
+				if (!state.isVisited(neighbour.getIndex()) && costFromStart < state.getCost(neighbour.getIndex())) {
+					state.reach(neighbour.getIndex(), costFromStart, seg.getIndex());
+					fringe.offer(new FringeObject(neighbour, currNode, costFromStart, costFromStart + neighbour.location.distance(endNode.location)));
+					pushes++;
+				}
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+
+	/**
+	 * A* with the SearchState's NodeHeap, lowering a node's estimate in place for a cheaper way to it.
+	 * Returns the length of the shortest path, infinite if there isn't one.
+	 */
+	private static double heapSearch(Graph graph, Node startNode, Node endNode) {
+		SearchState state = graph.forwardState();
+		NodeHeap fringe = state.getFringe();
+		state.start();
+		state.reach(startNode.getIndex(), 0, SearchState.NONE);
+		fringe.push(startNode.getIndex(), startNode.location.distance(endNode.location));
+		pushes++;
+		while (!fringe.isEmpty()) {
+			int curr = fringe.poll();
+			Node currNode = graph.getNode(curr);
+			state.setVisited(curr);
+			if (currNode == endNode) {
+				return state.getCost(curr);
+			}
+			for (Segment seg : currNode.segments) {
+				Node neighbour = seg.end == currNode ? seg.start : seg.end;
+				double costFromStart = state.getCost(curr) + seg.length;
+				if (!state.isVisited(neighbour.getIndex()) && costFromStart < state.getCost(neighbour.getIndex())) {
+					state.reach(neighbour.getIndex(), costFromStart, seg.getIndex());
+					if (!fringe.contains(neighbour.getIndex())) {
+						pushes++;
+					}
+					fringe.push(neighbour.getIndex(), costFromStart + neighbour.location.distance(endNode.location));
+				}
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+
+	private interface Search {
+		double run(int i);
+	}
+}
@@ -37,5 +37,9 @@ public class FringeObject implements Comparable<FringeObject> {
         return costFromStart;
     }
 
+    public double getEstCost() {
+        return estCost;
+    }
+
 
 }
\ No newline at end of file
@@ -4,8 +4,10 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -25,6 +27,15 @@ public class Graph {
 	// just some collection of Segments.
 	Collection<Segment> segments;
 
+	// nodes in order of ID and segments in the order they were read, so each can be numbered
+	// 0 to count - 1 by its position (its index) and searches can keep their state in arrays.
+	private Node[] nodesByIndex;
+	private Segment[] segmentsByIndex;
+
+	// search state for the shortest path searches, one pair per thread so searches can run at the same time
+	private final ThreadLocal<SearchState> forwardState = ThreadLocal.withInitial(() -> new SearchState(nodeCount()));
+	private final ThreadLocal<SearchState> backwardState = ThreadLocal.withInitial(() -> new SearchState(nodeCount()));
+
 	//fields for storing the highlighted parts of the graph
 	private Node highlightedStartNode;
 	private Node highlightedEndNode;
@@ -36,6 +47,16 @@ public class Graph {
 		this.nodes = Parser.parseNodes(nodes, this);
 		this.roads = Parser.parseRoads(roads, this);
 		this.segments = Parser.parseSegments(segments, this);
+
+		nodesByIndex = this.nodes.values().toArray(new Node[0]);
+		Arrays.sort(nodesByIndex, Comparator.comparingInt((Node node) -> node.nodeID));
+		for (int i = 0; i < nodesByIndex.length; i++) {
+			nodesByIndex[i].setIndex(i);
+		}
+		segmentsByIndex = this.segments.toArray(new Segment[0]);
+		for (int i = 0; i < segmentsByIndex.length; i++) {
+			segmentsByIndex[i].setIndex(i);
+		}
 	}
 
 	public void draw(Graphics g, Dimension screen, Location origin, double scale) {
@@ -84,6 +105,37 @@ public class Graph {
 	}
 
 
+	public Node getNode(int index) {
+		return nodesByIndex[index];
+	}
+
+	public int nodeCount() {
+		return nodesByIndex.length;
+	}
+
+	public Segment getSegment(int index) {
+		return segmentsByIndex[index];
+	}
+
+	public int segmentCount() {
+		return segmentsByIndex.length;
+	}
+
+	/**
+	 * This thread's state for a search, or for the forward half of a search from both ends.
+	 */
+	public SearchState forwardState() {
+		return forwardState.get();
+	}
+
+	/**
+	 * This thread's state for the backward half of a search from both ends.
+	 */
+	public SearchState backwardState() {
+		return backwardState.get();
+	}
+
+
 	public void setHighlightedStartNode(Node node) {
 		this.highlightedStartNode = node;
 	}
@@ -0,0 +1,124 @@
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Landmark (ALT) lower bounds for A*: the road distance from a few landmark nodes to every node, so that
+ * by the triangle inequality |dist(L, end) - dist(L, v)| is a lower bound on the road distance from v to the
+ * end for every landmark L. Unlike straight line distance this knows about harbours and hills, where the
+ * roads have to go the long way round. The bound is consistent, so A* can use it in place of straight line
+ * distance without any other change.
+ *
+ * Landmarks are picked far apart, each one being the node furthest by road from the landmarks already picked
+ * (the first the furthest from an arbitrary node), so that they sit around the edges of the map.
+ * Distances are kept as floats, node by node, so the bounds for one node are next to each other. They are
+ * worked out in floats too, each sum rounded down, which keeps every stored pair of neighbours within their
+ * segment's length of each other and so keeps the bound consistent, which rounding exact distances would not.
+ */
+public class Landmarks {
+	public static final int DEFAULT_COUNT = 16;
+
+	private final Graph graph;
+	private final int count;
+	private final int[] landmarks;
+	//distance[v * count + l] is the road distance between landmark l and node v, infinite if it can't be reached
+	private final float[] distance;
+
+
+	public Landmarks(Graph graph, int count) {
+		this.graph = graph;
+		int nodeCount = graph.nodeCount();
+		this.count = Math.min(count, nodeCount);
+		landmarks = new int[this.count];
+		distance = new float[nodeCount * this.count];
+
+		float[] nearestLandmark = new float[nodeCount];
+		Arrays.fill(nearestLandmark, Float.POSITIVE_INFINITY);
+		int next = furthest(distancesFrom(0), null);
+		for (int l = 0; l < this.count; l++) {
+			landmarks[l] = next;
+			float[] dist = distancesFrom(next);
+			for (int v = 0; v < nodeCount; v++) {
+				distance[v * this.count + l] = dist[v];
+				nearestLandmark[v] = Math.min(nearestLandmark[v], dist[v]);
+			}
+			next = furthest(nearestLandmark, dist);
+		}
+	}
+
+
+	/**
+	 * The lower bound on the road distance from a node to the end node, for use as A*'s estimate.
+	 * Straight line distance is used as well, whichever is larger.
+	 */
+	public ToDoubleFunction<Node> toward(Node endNode) {
+		float[] endDistance = Arrays.copyOfRange(distance, endNode.getIndex() * count, endNode.getIndex() * count + count);
+		return (Node node) -> {
+			double bound = node.location.distance(endNode.location);
+			int base = node.getIndex() * count;
+			for (int l = 0; l < count; l++) {
+				float fromLandmark = distance[base + l];
+				if (fromLandmark != Float.POSITIVE_INFINITY && endDistance[l] != Float.POSITIVE_INFINITY) {
+					bound = Math.max(bound, Math.abs((double) endDistance[l] - fromLandmark));
+				}
+			}
+			return bound;
+		};
+	}
+
+
+	public int getCount() {
+		return count;
+	}
+
+
+	public Node getLandmark(int l) {
+		return graph.getNode(landmarks[l]);
+	}
+
+
+	/**
+	 * Dijkstra from the node over the whole graph, by node index, with each sum rounded down to a float.
+	 * Every segment is relaxed, so dist[v] <= dist[u] + length for each segment between u and v.
+	 */
+	private float[] distancesFrom(int source) {
+		float[] dist = new float[graph.nodeCount()];
+		Arrays.fill(dist, Float.POSITIVE_INFINITY);
+		NodeHeap fringe = new NodeHeap(graph.nodeCount());
+		dist[source] = 0;
+		fringe.push(source, 0);
+		while (!fringe.isEmpty()) {
+			Node node = graph.getNode(fringe.poll());
+			for (Segment seg : node.segments) {
+				Node neighbour = seg.end == node ? seg.start : seg.end;
+				float costFromSource = roundDown(dist[node.getIndex()] + seg.length);
+				if (costFromSource < dist[neighbour.getIndex()]) {
+					dist[neighbour.getIndex()] = costFromSource;
+					fringe.push(neighbour.getIndex(), costFromSource);
+				}
+			}
+		}
+		return dist;
+	}
+
+
+	private static float roundDown(double value) {
+		float rounded = (float) value;
+		return rounded > value ? Math.nextDown(rounded) : rounded;
+	}
+
+
+	/**
+	 * The node with the largest finite distance, only looking at nodes reachable in lastSearch if it is given
+	 * (so landmarks stay in the same part of a graph that isn't connected).
+	 */
+	private int furthest(float[] dist, float[] lastSearch) {
+		int best = 0;
+		for (int v = 0; v < dist.length; v++) {
+			boolean reachable = dist[v] != Float.POSITIVE_INFINITY && (lastSearch == null || lastSearch[v] != Float.POSITIVE_INFINITY);
+			if (reachable && (dist[best] == Float.POSITIVE_INFINITY || dist[v] > dist[best])) {
+				best = v;
+			}
+		}
+		return best;
+	}
+}
@@ -5,6 +5,14 @@ import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import javax.swing.SwingUtilities;
 
 /**
  * This is the main class for the mapping program. It extends the GUI abstract
@@ -45,6 +53,24 @@ public class Mapper extends GUI {
 	//nodes for the shortest path search
 	private Node startNode, endNode;
 
+	//the search used for the shortest path, picked by typing its name in the search box
+	public enum SearchMode {
+		A_STAR, ALT, BIDIRECTIONAL, CONTRACTION_HIERARCHY
+	}
+	private SearchMode searchMode = SearchMode.A_STAR;
+
+	//preprocessing for the searches that need it is done here rather than on the Swing thread, as it can take a while
+	private final ExecutorService preparer = Executors.newSingleThreadExecutor((Runnable r) -> {
+		Thread thread = new Thread(r, "search preparation");
+		thread.setDaemon(true);
+		return thread;
+	});
+	//preprocessed the first time the contraction hierarchy search is used, then kept in a file next to the data
+	private Future<ContractionHierarchy> hierarchy;
+	private File hierarchyFile;
+	//landmark distances for A* in ALT mode, worked out the first time they are used
+	private Future<Landmarks> landmarks;
+
 	@Override
 	protected void redraw(Graphics g) {
 		if (graph != null)
@@ -71,9 +97,29 @@ public class Mapper extends GUI {
 		}
 	}
 
+	/**
+	 * Picks the shortest path search: "alt" for A* with landmark estimates, "bidirectional" (or "bi") for
+	 * bidirectional A*, "ch" for the contraction hierarchy, anything else for A*.
+	 * If a start and end node are already chosen the path is searched for again with the new mode.
+	 */
 	@Override
 	protected void onSearch() {
-		// Does nothing
+		String text = getSearchBox().getText().trim().toLowerCase(Locale.ROOT);
+		if(text.equals("alt")) {
+			searchMode = SearchMode.ALT;
+		}else if(text.equals("bidirectional") || text.equals("bi")) {
+			searchMode = SearchMode.BIDIRECTIONAL;
+		}else if(text.equals("ch")) {
+			searchMode = SearchMode.CONTRACTION_HIERARCHY;
+		}else {
+			searchMode = SearchMode.A_STAR;
+		}
+		if(graph != null && startNode != null && endNode != null) {
+			clearHighlightedPath();
+			findShortestPath(startNode, endNode);
+		}else {
+			getTextOutputArea().setText("Search mode: " + searchMode);
+		}
 	}
 
 	@Override
@@ -105,6 +151,15 @@ public class Mapper extends GUI {
 	@Override
 	protected void onLoad(File nodes, File roads, File segments, File polygons) {
 		graph = new Graph(nodes, roads, segments, polygons);
+		if(hierarchy != null) {
+			hierarchy.cancel(false);
+		}
+		hierarchy = null;
+		if(landmarks != null) {
+			landmarks.cancel(false);
+		}
+		landmarks = null;
+		hierarchyFile = new File(segments.getAbsoluteFile().getParentFile(), ContractionHierarchy.FILE_NAME);
 		origin = new Location(-250, 250); // close enough
 		scale = 1;
 	}
@@ -119,10 +174,7 @@ public class Mapper extends GUI {
 	 * node and search is called again.
 	 */
 	private void setNodes(Node near) {
-		for(Segment seg : graph.getHighlightedSegments()) {
-			seg.setHighlight(false);
-		}
-		graph.getHighlightedSegments().clear();
+		clearHighlightedPath();
 
 		//The first two sets the start node, the third is the swap from end to start nodes
 		if(startNode == null) {
@@ -145,6 +197,14 @@ public class Mapper extends GUI {
 	}
 
 
+	private void clearHighlightedPath() {
+		for(Segment seg : graph.getHighlightedSegments()) {
+			seg.setHighlight(false);
+		}
+		graph.getHighlightedSegments().clear();
+	}
+
+
 	/**
 	 * This method does the nasty logic of making sure we always zoom into/out
 	 * of the centre of the screen. It assumes that scale has just been updated
@@ -168,58 +228,145 @@ public class Mapper extends GUI {
 
 	/**
 	 * Performs A* search for the shortest path between the start and end nodes. This works by using
-	 * a priority queue with fringe objects that contain information needed to search. The priority queue is
-	 * sorted based on the overall estimated cost so that the shortest path is shown first. The search begins with
-	 * the start node in the fringe then going through until it's empty or the end node is expanded. Meaning that the shortest path has been found.
-	 * Every time a node is expanded it'll be visited and the previous node is set so are able to trace the path.
-	 * All unvisited neighbours from connected segments are added with their current dist from the start and
-	 * the overall est cost to continue the search.
-	 * The path is retrieved and printed, and all previous nodes and visited are cleared before search again.
+	 * a fringe of nodes (a NodeHeap) sorted based on the overall estimated cost so that the shortest path is
+	 * shown first. The search begins with the start node in the fringe then going through until it's empty or
+	 * the end node is expanded. Meaning that the shortest path has been found.
+	 * Every time a node is expanded it'll be visited. All unvisited neighbours from connected segments that this
+	 * reaches more cheaply than before get their current dist from the start and the segment they were reached by
+	 * kept, so the path can be traced, and are added to the fringe with the overall est cost, or have their est cost
+	 * lowered if they're on it already. So each node is on the fringe at most once and nothing is allocated per segment.
+	 * The costs, segments and visits are kept in the graph's SearchState for this thread rather than on the nodes,
+	 * so nothing has to be cleared before the next search and only the nodes it reaches are touched.
+	 * In bidirectional mode the search is done by BidirectionalAStar instead, and in contraction hierarchy mode by
+	 * an upward search of the hierarchy, which is loaded (or built and saved) the first time it's needed.
+	 * In ALT mode the A* estimate is the landmark lower bound instead of the straight line distance.
+	 * The hierarchy and landmarks are prepared in the background (see prepare), until they're ready this only
+	 * says so and the search is run again once they are.
+	 * Either way the number of nodes settled (expanded) is printed with the path, to compare how much of the
+	 * graph each search looks at.
 	 */
 	private void findShortestPath(Node startNode, Node endNode) {
 		if(startNode == endNode) {
 			getTextOutputArea().setText(startNode.toString());
 			return;
 		}
-		Queue<FringeObject> fringe = new PriorityQueue<FringeObject>(FringeObject::compareTo);
-		for(Node node : graph.nodes.values()) {
-			node.setVisited(false);
-			node.setPrevNode(null);
+		if(searchMode == SearchMode.BIDIRECTIONAL) {
+			BidirectionalAStar search = new BidirectionalAStar(graph, startNode, endNode);
+			printShortestPath(search.search(), search.getSettled());
+			return;
 		}
-		fringe.offer(new FringeObject(startNode, null, 0, startNode.location.distance(endNode.location)));
-		Node lastVisit = null;
+		if(searchMode == SearchMode.CONTRACTION_HIERARCHY) {
+			if(hierarchy == null) {
+				Graph toPrepare = graph;
+				File file = hierarchyFile;
+				hierarchy = prepare((Consumer<String> warnings) -> ContractionHierarchy.loadOrBuild(toPrepare, file, warnings));
+			}
+			ContractionHierarchy prepared = getPrepared(hierarchy, "contraction hierarchy");
+			if(prepared == null) {
+				return;
+			}
+			ContractionHierarchy.Query query = prepared.query(startNode, endNode);
+			printShortestPath(query.search(), query.getSettled());
+			return;
+		}
+		ToDoubleFunction<Node> estimate = (Node node) -> node.location.distance(endNode.location);
+		if(searchMode == SearchMode.ALT) {
+			if(landmarks == null) {
+				Graph toPrepare = graph;
+				landmarks = prepare((Consumer<String> warnings) -> new Landmarks(toPrepare, Landmarks.DEFAULT_COUNT));
+			}
+			Landmarks prepared = getPrepared(landmarks, "landmarks");
+			if(prepared == null) {
+				return;
+			}
+			estimate = prepared.toward(endNode);
+		}
+		SearchState state = graph.forwardState();
+		NodeHeap fringe = state.getFringe();
+		state.start();
+		state.reach(startNode.getIndex(), 0, SearchState.NONE);
+		fringe.push(startNode.getIndex(), estimate.applyAsDouble(startNode));
+		int settled = 0;
 		while(!fringe.isEmpty()) {
-			FringeObject currFringe = fringe.poll();
-			Node currNode = currFringe.getCurrNode();
-			if(!currNode.isVisited()) {
-				currNode.setVisited(true);
-				lastVisit = currNode;
-				currNode.setPrevNode(currFringe.getPrevNode());
-				if(currNode == endNode) {
-					break;
+			int curr = fringe.poll();
+			Node currNode = graph.getNode(curr);
+			state.setVisited(curr);
+			settled++;
+			if(currNode == endNode) {
+				break;
+			}
+			for(Segment seg : currNode.segments) {
+				Node neighbour = seg.end; //neighbour node
+				if(neighbour == currNode) {
+					neighbour = seg.start;
+				}
+				double costFromStart = state.getCost(curr) + seg.length;
+				if(!state.isVisited(neighbour.getIndex()) && costFromStart < state.getCost(neighbour.getIndex())) {
+					state.reach(neighbour.getIndex(), costFromStart, seg.getIndex());
+					double estCost = costFromStart + estimate.applyAsDouble(neighbour); //overall estimated cost
+					fringe.push(neighbour.getIndex(), estCost); //adds it, or lowers its estimate if it's already on the fringe
 				}
-				for(Segment seg : currNode.segments) {
-					Node neighbour = seg.end; //neighbour node
-					if(neighbour == currNode) {
-						neighbour = seg.start;
+			}
+		}
+		printShortestPath(pathFromState(state, startNode, endNode), settled);
+	}
+
+	/**
+	 * Runs the preprocessing on the preparation thread. When it finishes the path between the chosen nodes is
+	 * searched for again on the Swing thread (unless another graph has been loaded since), followed by any
+	 * warnings the preprocessing gave, such as a file it couldn't save.
+	 */
+	private <T> Future<T> prepare(Function<Consumer<String>, T> task) {
+		Graph preparedFor = graph;
+		return preparer.submit(() -> {
+			List<String> warnings = Collections.synchronizedList(new ArrayList<String>());
+			try {
+				return task.apply(warnings::add);
+			} finally {
+				SwingUtilities.invokeLater(() -> {
+					if(graph != preparedFor) {
+						return;
 					}
-					if(!neighbour.isVisited()) {
-						double costFromStart = currFringe.getCostFromStart() + seg.length;
-						double estCost = costFromStart + neighbour.location.distance(endNode.location); //overall estimated cost
-						fringe.offer(new FringeObject(neighbour, currNode, costFromStart, estCost));
+					if(startNode != null && endNode != null) {
+						clearHighlightedPath();
+						findShortestPath(startNode, endNode);
 					}
-				}
+					for(String warning : warnings) {
+						getTextOutputArea().append("\n" + warning);
+					}
+					redraw();
+				});
 			}
+		});
+	}
+
+
+	/**
+	 * The result of the preprocessing if it has finished. Otherwise shows that it is still being prepared,
+	 * or why it failed, and returns null.
+	 */
+	private <T> T getPrepared(Future<T> prepared, String name) {
+		if(!prepared.isDone()) {
+			getTextOutputArea().setText("Preparing the " + name + ", the path will be shown when it's ready...");
+			return null;
+		}
+		try {
+			return prepared.get();
+		} catch (InterruptedException | ExecutionException e) {
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			getTextOutputArea().setText("Could not prepare the " + name + ": " + cause);
+			return null;
 		}
-		printShortestPath(pathFromPrev(lastVisit, endNode));
 	}
 
+
 	/**
 	 * Prints each segment in the path, incl the length in order of the first segment from start to end.
 	 * The length of each segment is added to the path distance to calculate the total distance.
 	 * @param pathSeg stack contains all segments for the path to be printed
+	 * @param settled number of nodes the search expanded
 	 */
-	private void printShortestPath(Stack<Segment> pathSeg) {
+	private void printShortestPath(Stack<Segment> pathSeg, int settled) {
 		String pathName = "";
 		double totalDist = 0;
 
@@ -233,30 +380,28 @@ public class Mapper extends GUI {
 				graph.addHighlightedSegment(seg);
 			}
 		}
-		getTextOutputArea().setText(pathName + "Total Distance: " + totalDist + "km");
+		getTextOutputArea().setText(pathName + "Total Distance: " + totalDist + "km\n" + searchMode + " settled " + settled + " nodes");
 	}
 
 
 	/**
-	 * Goes through the previous nodes from the final node to the start node, when there are no more previous nodes for each node.
-	 * For each node, the segment to the previous node is taken and stored on the stack so it'll be printed to the screen which is then return.
+	 * Goes back through the segments each node was reached by, from the end node to the start node.
+	 * Each segment is stored on the stack so it'll be printed to the screen which is then return.
+	 * @param state the search's state, the end node must have been visited for there to be a path
+	 * @param startNode node the search started at
 	 * @param endNode target node for the search
-	 * @param finalNode absolute end node of the search
 	 */
-	private Stack<Segment> pathFromPrev(Node endNode, Node finalNode){
+	private Stack<Segment> pathFromState(SearchState state, Node startNode, Node endNode){
 		Stack<Segment> pathSeg = new Stack<Segment>(); //path segments
-		Node currNode = finalNode;
+		Node currNode = endNode;
 
-		if(currNode != endNode) { //returns empty stack if the finalNode is not the end node
+		if(!state.isVisited(endNode.getIndex())) { //returns empty stack if the end node was not reached
 			return pathSeg;
 		}
-		while(currNode.getPrevNode() != null) {
-			for(Segment seg : currNode.segments) {
-				if(seg.start == currNode.getPrevNode() || seg.end == currNode.getPrevNode()) { //adds the segments which connect the two nodes
-					pathSeg.push(seg);
-				}
-			}
-			currNode = currNode.getPrevNode();
+		while(currNode != startNode) {
+			Segment seg = graph.getSegment(state.getReachedBy(currNode.getIndex()));
+			pathSeg.push(seg);
+			currNode = seg.start == currNode ? seg.end : seg.start;
 		}
 		return pathSeg;
 	}
@@ -17,16 +17,13 @@ public class Node {
 	public final int nodeID;
 	public final Location location;
 	public final Collection<Segment> segments;
-	private Node prevNode;		//used for A* search
-	private boolean visited; 	//used for A*
+	private int index;			//position in the graph's node order, see Graph
 
 
 	public Node(int nodeID, double lat, double lon) {
 		this.nodeID = nodeID;
 		this.location = Location.newFromLatLon(lat, lon);
 		this.segments = new HashSet<Segment>();
-		prevNode = null;
-		visited = false;
 	}
 
 
@@ -47,20 +44,12 @@ public class Node {
 	}
 
 
-	public Node getPrevNode() {
-		return prevNode;
+	public int getIndex() {
+		return index;
 	}
 
-	public void setPrevNode(Node prevNode) {
-		this.prevNode = prevNode;
-	}
-
-	public boolean isVisited() {
-		return visited;
-	}
-
-	public void setVisited(boolean visited) {
-		this.visited = visited;
+	public void setIndex(int index) {
+		this.index = index;
 	}
 
 	public String toString() {
@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+/**
+ * A fringe for searches over node indices (see Graph): a 4-ary min-heap of nodes by key, which knows where each
+ * node is in the heap so a node's key can be lowered in place rather than the node being added again.
+ * Nothing is allocated once it's made, and it holds each node at most once, so it never grows past the node count.
+ * A 4-ary heap is shallower than a binary one and its children sit next to each other, which suits the many
+ * decrease-keys of a road search (cheap sift ups) over the fewer polls (a little more work per level).
+ */
+public class NodeHeap {
+	private static final int ARITY = 4;
+	private static final int ABSENT = -1;
+
+	private final int[] heap;		//the node at each position in the heap
+	private final double[] key;		//by node, only meaningful while it is in the heap
+	private final int[] position;	//by node, where it is in the heap or ABSENT
+	private int size;
+
+
+	public NodeHeap(int nodeCount) {
+		heap = new int[nodeCount];
+		key = new double[nodeCount];
+		position = new int[nodeCount];
+		Arrays.fill(position, ABSENT);
+	}
+
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	public boolean contains(int node) {
+		return position[node] != ABSENT;
+	}
+
+
+	/**
+	 * The smallest key in the heap, which must not be empty.
+	 */
+	public double peekKey() {
+		return key[heap[0]];
+	}
+
+
+	/**
+	 * Adds the node with the key, or lowers its key if it is already in the heap with a larger one.
+	 * A larger key for a node already in the heap is ignored.
+	 */
+	public void push(int node, double nodeKey) {
+		int at = position[node];
+		if (at == ABSENT) {
+			at = size++;
+		} else if (nodeKey >= key[node]) {
+			return;
+		}
+		key[node] = nodeKey;
+		siftUp(at, node);
+	}
+
+
+	/**
+	 * Removes and returns the node with the smallest key, the heap must not be empty.
+	 */
+	public int poll() {
+		int top = heap[0];
+		position[top] = ABSENT;
+		size--;
+		if (size > 0) {
+			siftDown(0, heap[size]);
+		}
+		return top;
+	}
+
+
+	/**
+	 * Empties the heap, only touching the nodes still in it.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = ABSENT;
+		}
+		size = 0;
+	}
+
+
+	/**
+	 * Moves the hole at the position up past every parent with a larger key, then puts the node in it.
+	 */
+	private void siftUp(int at, int node) {
+		double nodeKey = key[node];
+		while (at > 0) {
+			int parent = (at - 1) / ARITY;
+			int parentNode = heap[parent];
+			if (key[parentNode] <= nodeKey) {
+				break;
+			}
+			heap[at] = parentNode;
+			position[parentNode] = at;
+			at = parent;
+		}
+		heap[at] = node;
+		position[node] = at;
+	}
+
+
+	/**
+	 * Moves the hole at the position down past every smallest child with a smaller key, then puts the node in it.
+	 */
+	private void siftDown(int at, int node) {
+		double nodeKey = key[node];
+		while (true) {
+			int first = at * ARITY + 1;
+			if (first >= size) {
+				break;
+			}
+			int smallest = first;
+			int last = Math.min(first + ARITY, size);
+			for (int child = first + 1; child < last; child++) {
+				if (key[heap[child]] < key[heap[smallest]]) {
+					smallest = child;
+				}
+			}
+			int childNode = heap[smallest];
+			if (key[childNode] >= nodeKey) {
+				break;
+			}
+			heap[at] = childNode;
+			position[childNode] = at;
+			at = smallest;
+		}
+		heap[at] = node;
+		position[node] = at;
+	}
+}
@@ -2,11 +2,11 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * This utility class provides three static methods for parsing each of the
@@ -83,8 +83,11 @@ public class Parser {
         return map;
     }
 
+    /**
+     * The segments in the order they are in the file, which Graph uses to number them.
+     */
     public static Collection<Segment> parseSegments(File segments, Graph graph) {
-        Set<Segment> set = new HashSet<Segment>();
+        List<Segment> list = new ArrayList<Segment>();
 
         try {
             BufferedReader br = new BufferedReader(new FileReader(segments));
@@ -105,7 +108,7 @@ public class Parser {
 
                 Segment segment = new Segment(graph, roadID, length, node1ID,
                         node2ID, coords);
-                set.add(segment);
+                list.add(segment);
             }
 
             br.close();
@@ -113,7 +116,7 @@ public class Parser {
             throw new RuntimeException("File Reading Failed.");
         }
 
-        return set;
+        return list;
     }
 
     private static int asInt(String str) {
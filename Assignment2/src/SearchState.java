@@ -0,0 +1,90 @@
+import java.util.Arrays;
+
+/**
+ * The state of one shortest path search, by node index (see Graph): the best cost found to each node, how it
+ * was reached (a segment, or an edge for the contraction hierarchy), whether it has been visited, and a fringe
+ * for searches that order their nodes with a NodeHeap.
+ * Each entry is stamped with the search that set it, so starting a search only bumps the stamp instead of
+ * clearing every node, and a search costs only the nodes it touches. A SearchState is only used by one search
+ * at a time; Graph keeps one per thread, so several threads can search the same graph at once.
+ */
+public class SearchState {
+	public static final int NONE = -1;
+
+	private final double[] cost;
+	private final int[] reachedBy;
+	private final int[] reachedIn;	//the search cost and reachedBy were set in
+	private final int[] visitedIn;	//the search the node was visited in
+	private final NodeHeap fringe;
+	private int search;
+
+
+	public SearchState(int nodeCount) {
+		cost = new double[nodeCount];
+		reachedBy = new int[nodeCount];
+		reachedIn = new int[nodeCount];
+		visitedIn = new int[nodeCount];
+		fringe = new NodeHeap(nodeCount);
+	}
+
+
+	/**
+	 * Starts a new search, forgetting everything set in the last one. The stamps only need clearing once
+	 * every couple of billion searches, when the counter wraps. The fringe is emptied.
+	 */
+	public void start() {
+		fringe.clear();
+		search++;
+		if (search == Integer.MAX_VALUE) {
+			Arrays.fill(reachedIn, 0);
+			Arrays.fill(visitedIn, 0);
+			search = 1;
+		}
+	}
+
+
+	/**
+	 * The best cost found to the node in this search, infinite if it hasn't been reached.
+	 */
+	public double getCost(int node) {
+		return reachedIn[node] == search ? cost[node] : Double.POSITIVE_INFINITY;
+	}
+
+
+	public boolean isReached(int node) {
+		return reachedIn[node] == search;
+	}
+
+
+	/**
+	 * Records a (better) cost to the node and what it was reached by.
+	 */
+	public void reach(int node, double nodeCost, int by) {
+		cost[node] = nodeCost;
+		reachedBy[node] = by;
+		reachedIn[node] = search;
+	}
+
+
+	/**
+	 * What the node was reached by, NONE if it hasn't been (or is where the search started).
+	 */
+	public int getReachedBy(int node) {
+		return reachedIn[node] == search ? reachedBy[node] : NONE;
+	}
+
+
+	public boolean isVisited(int node) {
+		return visitedIn[node] == search;
+	}
+
+
+	public void setVisited(int node) {
+		visitedIn[node] = search;
+	}
+
+
+	public NodeHeap getFringe() {
+		return fringe;
+	}
+}
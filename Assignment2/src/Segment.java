@@ -16,6 +16,7 @@ public class Segment {
 	public final double length;
 	public final Location[] points;
 	private boolean highlight; //checks whether segment is highlighted
+	private int index; //position in the graph's segment order, see Graph
 
 	public Segment(Graph graph, int roadID, double length, int node1ID,
 				   int node2ID, double[] coords) {
@@ -46,6 +47,14 @@ public class Segment {
 		}
 	}
 
+	public int getIndex() {
+		return index;
+	}
+
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
 	public void setHighlight(boolean highlight) {
 		this.highlight = highlight;
 	}